@@ -0,0 +1,39 @@
+package com.github.yinzhouzhou.sdn.grpc.example.api;
+
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import com.google.common.annotations.Beta;
+
+/**
+ * Blocking view of a {@link GnmiClient}, for callers running on virtual
+ * threads. Each call has its own deadline, and fails with the status of the
+ * RPC instead of returning a default response.
+ */
+@Beta
+public interface GnmiBlockingClient {
+
+    /**
+     * Gets capability from a target.
+     *
+     * @return the capability response
+     * @throws io.grpc.StatusRuntimeException if the RPC fails
+     */
+    Gnmi.CapabilityResponse capabilities();
+
+    /**
+     * Retrieves a snapshot of data from the device.
+     *
+     * @param request the get request
+     * @return the snapshot of data from the device
+     * @throws io.grpc.StatusRuntimeException if the RPC fails
+     */
+    Gnmi.GetResponse get(Gnmi.GetRequest request);
+
+    /**
+     * Modifies the state of data on the device.
+     *
+     * @param request the set request
+     * @return the set result
+     * @throws io.grpc.StatusRuntimeException if the RPC fails
+     */
+    Gnmi.SetResponse set(Gnmi.SetRequest request);
+}
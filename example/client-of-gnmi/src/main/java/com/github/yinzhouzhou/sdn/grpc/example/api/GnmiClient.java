@@ -6,6 +6,8 @@ import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcClient;
 import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
 import com.google.common.annotations.Beta;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.reactivestreams.Publisher;
 
 /**
  * Client to control a gNMI server.
@@ -36,6 +38,17 @@ public interface GnmiClient extends GrpcClient {
      */
     CompletableFuture<Gnmi.SetResponse> set(Gnmi.SetRequest request);
 
+    /**
+     * Returns a blocking view of this client, whose calls park the calling
+     * thread until the response. Each call gets the timeout as its own
+     * deadline, counted from its start.
+     *
+     * @param timeout deadline of each call
+     * @param unit    unit of the timeout
+     * @return blocking client
+     */
+    GnmiBlockingClient blocking(long timeout, TimeUnit unit);
+
     /**
      * Starts a subscription for the given request. Updates will be notified by
      * the controller via {@link GnmiEvent.Type#UPDATE} events. The client
@@ -50,4 +63,34 @@ public interface GnmiClient extends GrpcClient {
      * Terminates any Subscribe RPC active.
      */
     void unsubscribe();
+
+    /**
+     * Adds subscriptions on behalf of one of the consumers of the device.
+     * Subscriptions of all consumers sharing the same settings (mode, encoding,
+     * prefix...) are merged into one Subscribe RPC, and paths subscribed by
+     * several consumers are subscribed once. The updates of the subscribed
+     * paths and of the paths below them are delivered to the listener, on the
+     * event threads of the controller.
+     *
+     * <p>These RPCs are independent of {@link #subscribe(Gnmi.SubscribeRequest)}.
+     *
+     * @param subscriptions subscriptions of the consumer, in STREAM mode
+     * @param listener      listener of the updates of the subscribed paths
+     * @return subscription to close when the consumer is done
+     */
+    GnmiSubscription subscribe(Gnmi.SubscriptionList subscriptions, GnmiPathListener listener);
+
+    /**
+     * Returns a publisher of the updates of a subscription. Each subscriber
+     * gets its own Subscribe RPC, which reads from the device only as the
+     * subscriber requests, and ends with it: the subscriber completes or fails
+     * with the RPC, and cancelling cancels the RPC. Broken RPCs are not
+     * restarted.
+     *
+     * <p>These RPCs are independent of {@link #subscribe(Gnmi.SubscribeRequest)}.
+     *
+     * @param request the subscribe request
+     * @return publisher of the updates, one per SubscribeResponse
+     */
+    Publisher<GnmiUpdate> publisher(Gnmi.SubscribeRequest request);
 }
@@ -0,0 +1,33 @@
+package com.github.yinzhouzhou.sdn.grpc.example.api;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import com.google.common.annotations.Beta;
+
+/**
+ * Listener of the updates of the gNMI paths matching the pattern it was
+ * registered for.
+ */
+@Beta
+public interface GnmiPathListener {
+
+    /**
+     * Handles an update of a matching path.
+     *
+     * @param deviceId device ID
+     * @param prefix   prefix of the notification
+     * @param update   update, with a path relative to the prefix
+     */
+    void updated(DeviceId deviceId, Gnmi.Path prefix, Gnmi.Update update);
+
+    /**
+     * Handles the deletion of a matching path.
+     *
+     * @param deviceId device ID
+     * @param prefix   prefix of the notification
+     * @param path     deleted path, relative to the prefix
+     */
+    default void deleted(DeviceId deviceId, Gnmi.Path prefix, Gnmi.Path path) {
+        // Most listeners only follow values.
+    }
+}
@@ -0,0 +1,303 @@
+package com.github.yinzhouzhou.sdn.grpc.example.api;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Values indexed by gNMI path patterns, matched against the paths of
+ * updates in time proportional to the depth of the path.
+ *
+ * <p>Patterns follow the gNMI wildcards: an element named {@code *} matches
+ * any one element, an element named {@code ...} matches any number of
+ * elements, and an element without keys or with a {@code *} key value matches
+ * any entry of the list, e.g. {@code /interfaces/interface[name=*]/state/counters}.
+ *
+ * <p>Matching takes no lock: it only reads concurrent maps, so it can run on
+ * the delivery threads while patterns are added and removed. Element names
+ * and keys of the patterns are interned, as the patterns of many listeners
+ * share them.
+ *
+ * @param <V> the value type
+ */
+@Beta
+public final class GnmiPathTrie<V> {
+
+    /**
+     * Element name matching any one element.
+     */
+    public static final String ANY_ELEMENT = "*";
+
+    /**
+     * Element name matching any number of elements, including none.
+     */
+    public static final String ANY_ELEMENTS = "...";
+
+    /**
+     * Key value matching any value.
+     */
+    public static final String ANY_VALUE = "*";
+
+    private static final Interner<String> NAMES = Interners.newWeakInterner();
+    private static final Interner<ImmutableMap<String, String>> KEYS = Interners.newWeakInterner();
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * Adds a value under a pattern. A value added twice is matched twice.
+     *
+     * @param pattern path pattern
+     * @param value   value
+     */
+    public synchronized void add(Gnmi.Path pattern, V value) {
+        checkNotNull(value);
+        Node<V> node = root;
+        for (Gnmi.PathElem elem : checkNotNull(pattern).getElemList()) {
+            node = node.child(elem);
+        }
+        node.values.add(value);
+        size++;
+    }
+
+    /**
+     * Removes a value added under a pattern.
+     *
+     * @param pattern path pattern
+     * @param value   value
+     * @return true if the value was found
+     */
+    public synchronized boolean remove(Gnmi.Path pattern, V value) {
+        final boolean removed = remove(root, checkNotNull(pattern).getElemList(), 0, value);
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    private static <V> boolean remove(Node<V> node, List<Gnmi.PathElem> elems, int index, V value) {
+        if (index == elems.size()) {
+            return node.values.remove(value);
+        }
+        final Gnmi.PathElem elem = elems.get(index);
+        final Node<V> child = node.existingChild(elem);
+        if (child == null || !remove(child, elems, index + 1, value)) {
+            return false;
+        }
+        if (child.isEmpty()) {
+            node.removeChild(elem);
+        }
+        return true;
+    }
+
+    /**
+     * Hands over the values of all the patterns matching a path.
+     *
+     * @param path     path without wildcards
+     * @param consumer consumer of the values
+     */
+    public void match(Gnmi.Path path, Consumer<? super V> consumer) {
+        match(Gnmi.Path.getDefaultInstance(), path, consumer);
+    }
+
+    /**
+     * Hands over the values of all the patterns matching a path given as the
+     * prefix of a notification and the path of one of its updates, without
+     * building the full path.
+     *
+     * @param prefix   prefix of the notification
+     * @param path     path of the update, relative to the prefix
+     * @param consumer consumer of the values
+     */
+    public void match(Gnmi.Path prefix, Gnmi.Path path, Consumer<? super V> consumer) {
+        final List<Gnmi.PathElem> head = prefix.getElemList();
+        final List<Gnmi.PathElem> tail = path.getElemList();
+        match(root, head, tail, 0, head.size() + tail.size(), checkNotNull(consumer));
+    }
+
+    private static <V> void match(Node<V> node, List<Gnmi.PathElem> head, List<Gnmi.PathElem> tail,
+                                  int index, int length, Consumer<? super V> consumer) {
+        final Node<V> anyElements = node.anyElements;
+        if (anyElements != null) {
+            for (int next = index; next <= length; next++) {
+                match(anyElements, head, tail, next, length, consumer);
+            }
+        }
+        if (index == length) {
+            node.values.forEach(consumer);
+            return;
+        }
+        if (node.children.isEmpty()) {
+            return;
+        }
+        final Gnmi.PathElem elem = index < head.size() ? head.get(index) : tail.get(index - head.size());
+        matchGroup(node.children.get(elem.getName()), elem, head, tail, index, length, consumer);
+        matchGroup(node.children.get(ANY_ELEMENT), elem, head, tail, index, length, consumer);
+    }
+
+    private static <V> void matchGroup(Group<V> group, Gnmi.PathElem elem, List<Gnmi.PathElem> head,
+                                       List<Gnmi.PathElem> tail, int index, int length,
+                                       Consumer<? super V> consumer) {
+        if (group == null) {
+            return;
+        }
+        final Node<V> exact = group.exact.get(elem.getKeyMap());
+        if (exact != null) {
+            match(exact, head, tail, index + 1, length, consumer);
+        }
+        if (group.wildcard.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Map<String, String>, Node<V>> entry : group.wildcard.entrySet()) {
+            if (keysMatch(entry.getKey(), elem.getKeyMap())) {
+                match(entry.getValue(), head, tail, index + 1, length, consumer);
+            }
+        }
+    }
+
+    private static boolean keysMatch(Map<String, String> pattern, Map<String, String> keys) {
+        for (Map.Entry<String, String> key : pattern.entrySet()) {
+            final String value = keys.get(key.getKey());
+            if (value == null || !ANY_VALUE.equals(key.getValue()) && !key.getValue().equals(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands over the values of the patterns at or below a path, e.g. all the
+     * listeners of the interfaces for {@code /interfaces}. An element without
+     * keys selects the patterns of all the entries of its list, other elements
+     * are compared as written, wildcards included.
+     *
+     * @param prefix   path
+     * @param consumer consumer of the values
+     */
+    public void forEachUnder(Gnmi.Path prefix, Consumer<? super V> consumer) {
+        forEachUnder(root, checkNotNull(prefix).getElemList(), 0, checkNotNull(consumer));
+    }
+
+    private static <V> void forEachUnder(Node<V> node, List<Gnmi.PathElem> elems, int index,
+                                         Consumer<? super V> consumer) {
+        if (index == elems.size()) {
+            forEach(node, consumer);
+            return;
+        }
+        final Gnmi.PathElem elem = elems.get(index);
+        if (elem.getKeyCount() == 0 && !ANY_ELEMENTS.equals(elem.getName())) {
+            final Group<V> group = node.children.get(elem.getName());
+            if (group != null) {
+                group.exact.values().forEach(child -> forEachUnder(child, elems, index + 1, consumer));
+                group.wildcard.values().forEach(child -> forEachUnder(child, elems, index + 1, consumer));
+            }
+            return;
+        }
+        final Node<V> child = node.existingChild(elem);
+        if (child != null) {
+            forEachUnder(child, elems, index + 1, consumer);
+        }
+    }
+
+    private static <V> void forEach(Node<V> node, Consumer<? super V> consumer) {
+        node.values.forEach(consumer);
+        if (node.anyElements != null) {
+            forEach(node.anyElements, consumer);
+        }
+        for (Group<V> group : node.children.values()) {
+            group.exact.values().forEach(child -> forEach(child, consumer));
+            group.wildcard.values().forEach(child -> forEach(child, consumer));
+        }
+    }
+
+    /**
+     * Number of values, all patterns included.
+     *
+     * @return size
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private static boolean isWildcard(Map<String, String> keys) {
+        return keys.isEmpty() || keys.containsValue(ANY_VALUE);
+    }
+
+    /**
+     * Values of a pattern and the patterns continuing it.
+     */
+    private static final class Node<V> {
+
+        private final ConcurrentMap<String, Group<V>> children = Maps.newConcurrentMap();
+        private final List<V> values = new CopyOnWriteArrayList<>();
+        private volatile Node<V> anyElements;
+
+        Node<V> child(Gnmi.PathElem elem) {
+            if (ANY_ELEMENTS.equals(elem.getName())) {
+                if (anyElements == null) {
+                    anyElements = new Node<>();
+                }
+                return anyElements;
+            }
+            final Group<V> group = children.computeIfAbsent(NAMES.intern(elem.getName()), name -> new Group<>());
+            final ImmutableMap<String, String> keys = internKeys(elem.getKeyMap());
+            return (isWildcard(keys) ? group.wildcard : group.exact).computeIfAbsent(keys, k -> new Node<>());
+        }
+
+        Node<V> existingChild(Gnmi.PathElem elem) {
+            if (ANY_ELEMENTS.equals(elem.getName())) {
+                return anyElements;
+            }
+            final Group<V> group = children.get(elem.getName());
+            if (group == null) {
+                return null;
+            }
+            return (isWildcard(elem.getKeyMap()) ? group.wildcard : group.exact).get(elem.getKeyMap());
+        }
+
+        void removeChild(Gnmi.PathElem elem) {
+            if (ANY_ELEMENTS.equals(elem.getName())) {
+                anyElements = null;
+                return;
+            }
+            final Group<V> group = children.get(elem.getName());
+            (isWildcard(elem.getKeyMap()) ? group.wildcard : group.exact).remove(elem.getKeyMap());
+            if (group.exact.isEmpty() && group.wildcard.isEmpty()) {
+                children.remove(elem.getName());
+            }
+        }
+
+        boolean isEmpty() {
+            return values.isEmpty() && children.isEmpty() && anyElements == null;
+        }
+
+        private static ImmutableMap<String, String> internKeys(Map<String, String> keys) {
+            if (keys.isEmpty()) {
+                return ImmutableMap.of();
+            }
+            final ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+            keys.forEach((key, value) -> builder.put(NAMES.intern(key), value));
+            return KEYS.intern(builder.build());
+        }
+    }
+
+    /**
+     * Children of a node sharing an element name, split by whether their keys
+     * can be looked up directly.
+     */
+    private static final class Group<V> {
+
+        private final ConcurrentMap<Map<String, String>, Node<V>> exact = Maps.newConcurrentMap();
+        private final ConcurrentMap<Map<String, String>, Node<V>> wildcard = Maps.newConcurrentMap();
+    }
+}
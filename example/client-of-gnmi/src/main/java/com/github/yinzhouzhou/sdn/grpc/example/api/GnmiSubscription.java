@@ -0,0 +1,18 @@
+package com.github.yinzhouzhou.sdn.grpc.example.api;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Subscriptions added by one consumer to the Subscribe RPCs shared with the
+ * other consumers of a device.
+ */
+@Beta
+public interface GnmiSubscription extends AutoCloseable {
+
+    /**
+     * Releases the subscriptions and unregisters the listener of the consumer.
+     * Closing twice has no effect.
+     */
+    @Override
+    void close();
+}
@@ -13,9 +13,11 @@ public class GnmiUpdate implements GnmiEventSubject {
     private DeviceId deviceId;
     private Gnmi.Notification update;
     private boolean syncResponse;
+    private long streamId;
+    private long rpcId;
 
     /**
-     * Default constructor.
+     * Default constructor, for an update of an unknown Subscribe RPC.
      *
      * @param deviceId the device id for this event
      * @param update the update for this event
@@ -23,9 +25,27 @@ public class GnmiUpdate implements GnmiEventSubject {
      *                     the subscription at least once.
      */
     public GnmiUpdate(DeviceId deviceId, Gnmi.Notification update, boolean syncResponse) {
+        this(deviceId, update, syncResponse, 0, 0);
+    }
+
+    /**
+     * Constructor of an update received on a known Subscribe RPC.
+     *
+     * @param deviceId the device id for this event
+     * @param update the update for this event
+     * @param syncResponse indicate target has sent all values associated with
+     *                     the subscription at least once.
+     * @param streamId the subscription whose RPC received the update
+     * @param rpcId the RPC which received the update, greater than the
+     *              previous RPCs of the subscription
+     */
+    public GnmiUpdate(DeviceId deviceId, Gnmi.Notification update, boolean syncResponse,
+                      long streamId, long rpcId) {
         this.deviceId = deviceId;
         this.update = update;
         this.syncResponse = syncResponse;
+        this.streamId = streamId;
+        this.rpcId = rpcId;
     }
 
     /**
@@ -47,6 +67,25 @@ public class GnmiUpdate implements GnmiEventSubject {
         return syncResponse;
     }
 
+    /**
+     * Identifies the subscription whose RPC received the update. A restarted
+     * or replaced RPC keeps the ID of its subscription.
+     *
+     * @return stream ID, 0 if unknown
+     */
+    public long streamId() {
+        return streamId;
+    }
+
+    /**
+     * Identifies the Subscribe RPC which received the update.
+     *
+     * @return RPC ID, 0 if unknown
+     */
+    public long rpcId() {
+        return rpcId;
+    }
+
     @Override
     public DeviceId deviceId() {
         return deviceId;
@@ -57,6 +96,8 @@ public class GnmiUpdate implements GnmiEventSubject {
         return MoreObjects.toStringHelper(getClass())
                 .add("deviceId", deviceId)
                 .add("syncResponse", syncResponse)
+                .add("streamId", streamId)
+                .add("rpcId", rpcId)
                 .add("update", update)
                 .toString();
     }
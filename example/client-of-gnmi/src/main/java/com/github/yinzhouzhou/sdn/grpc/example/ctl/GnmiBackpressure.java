@@ -0,0 +1,112 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Bounds the updates of a Subscribe RPC waiting for the listeners, and tells
+ * what to do when the listeners fall behind the device.
+ *
+ * <p>Each RPC hands its updates to the listeners one chunk at a time, the next
+ * chunk only once the previous one is delivered, and queues the updates
+ * received meanwhile, up to the capacity.
+ */
+public final class GnmiBackpressure {
+
+    /**
+     * What an RPC does with an update received while its queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Reads no update the queue cannot hold: the RPC uses manual gRPC
+         * flow control and asks the device for more updates as they are
+         * delivered, so a slow listener slows the device down. Nothing is lost.
+         */
+        BLOCK,
+        /**
+         * Drops the oldest queued update. Suits SAMPLE subscriptions, as the
+         * next sample carries the same paths. The {@code syncResponse} of a
+         * dropped update moves to the next one.
+         */
+        DROP_OLDEST,
+        /**
+         * Merges the queued updates into one which keeps the latest value of
+         * each path and the deletes, so that only intermediate values are lost.
+         */
+        CONFLATE_PER_PATH
+    }
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private GnmiBackpressure(Builder builder) {
+        this.capacity = builder.capacity;
+        this.overflowPolicy = builder.overflowPolicy;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("capacity", capacity)
+            .add("overflowPolicy", overflowPolicy)
+            .toString();
+    }
+
+    /**
+     * Builder of {@link GnmiBackpressure}.
+     */
+    public static final class Builder {
+
+        private int capacity = DEFAULT_CAPACITY;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of updates of an RPC queued while the listeners
+         * handle the previous ones, 1024 by default. A blocking RPC counts the
+         * updates being delivered too.
+         *
+         * @param capacity queue capacity
+         * @return this builder
+         */
+        public Builder capacity(int capacity) {
+            checkArgument(capacity > 0, "capacity must be positive");
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets what to do when the queue is full, {@link OverflowPolicy#BLOCK}
+         * by default.
+         *
+         * @param overflowPolicy overflow policy
+         * @return this builder
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = checkNotNull(overflowPolicy, "overflowPolicy");
+            return this;
+        }
+
+        public GnmiBackpressure build() {
+            return new GnmiBackpressure(this);
+        }
+    }
+}
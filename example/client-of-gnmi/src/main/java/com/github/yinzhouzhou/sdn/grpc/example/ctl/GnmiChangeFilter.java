@@ -0,0 +1,142 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import com.github.yinzhouzhou.sdn.grpc.utils.collect.LongLongHashMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Change detection for the notifications of one Subscribe RPC: keeps a
+ * fingerprint of the last value of each path and strips the updates which
+ * repeat it, e.g. the unchanged leaves a SAMPLE subscription resends at each
+ * interval.
+ *
+ * <p>Paths and values are reduced to 64-bit fingerprints, held in a primitive
+ * map, so a device costs 16 bytes per leaf whatever the size of its paths.
+ * Deleted paths are forgotten; a delete of a whole subtree forgets every path,
+ * as a fingerprint does not tell which paths are below it.
+ *
+ * <p>With a refresh interval, every fingerprint is forgotten once per
+ * interval, so that each value still streamed is posted again, e.g. to keep it
+ * alive in a {@link GnmiTelemetryCache} with a time to live.
+ */
+@NotThreadSafe
+final class GnmiChangeFilter {
+
+    private static final HashFunction FINGERPRINT = Hashing.farmHashFingerprint64();
+    private static final int EXPECTED_LEAVES = 1024;
+
+    private final LongLongHashMap values = new LongLongHashMap(EXPECTED_LEAVES, 0);
+    private final GnmiChangeStats stats;
+    private final long refreshNanos;
+    private long refreshedAtNanos = System.nanoTime();
+
+    GnmiChangeFilter(GnmiChangeStats stats, long refreshNanos) {
+        this.stats = stats;
+        this.refreshNanos = refreshNanos;
+    }
+
+    /**
+     * Returns the notification without its unchanged updates.
+     *
+     * @param notification notification received from the device
+     * @return the same notification if every update changed a value, a copy
+     *     without the unchanged ones, or null if nothing is left
+     */
+    Gnmi.Notification filter(Gnmi.Notification notification) {
+        if (refreshNanos > 0) {
+            final long now = System.nanoTime();
+            if (now - refreshedAtNanos >= refreshNanos) {
+                values.clear();
+                refreshedAtNanos = now;
+            }
+        }
+        final Gnmi.Path prefix = notification.getPrefix();
+        for (Gnmi.Path delete : notification.getDeleteList()) {
+            if (values.remove(pathFingerprint(prefix, delete)) == 0) {
+                // Not a known leaf, probably a subtree.
+                values.clear();
+            }
+        }
+        final List<Gnmi.Update> updates = notification.getUpdateList();
+        Gnmi.Notification.Builder changed = null;
+        for (int i = 0; i < updates.size(); i++) {
+            final Gnmi.Update update = updates.get(i);
+            final long value = valueFingerprint(update.getVal());
+            final boolean unchanged = values.put(pathFingerprint(prefix, update.getPath()), value) == value;
+            if (unchanged && changed == null) {
+                // First unchanged update, copy the changed ones before it.
+                changed = notification.toBuilder().clearUpdate();
+                for (int j = 0; j < i; j++) {
+                    changed.addUpdate(updates.get(j));
+                }
+            } else if (!unchanged && changed != null) {
+                changed.addUpdate(update);
+            }
+        }
+        if (changed == null) {
+            stats.record(updates.size(), 0);
+            return notification;
+        }
+        final int forwarded = changed.getUpdateCount();
+        stats.record(forwarded, updates.size() - forwarded);
+        return forwarded == 0 && notification.getDeleteCount() == 0 ? null : changed.build();
+    }
+
+    private static long pathFingerprint(Gnmi.Path prefix, Gnmi.Path path) {
+        final Hasher hasher = FINGERPRINT.newHasher();
+        putElems(hasher, prefix.getElemList());
+        putElems(hasher, path.getElemList());
+        return hasher.hash().asLong();
+    }
+
+    private static void putElems(Hasher hasher, List<Gnmi.PathElem> elems) {
+        for (Gnmi.PathElem elem : elems) {
+            hasher.putChar('/').putUnencodedChars(elem.getName());
+            if (elem.getKeyCount() == 0) {
+                continue;
+            }
+            // Keys in a stable order, the device may send them in any.
+            final Map<String, String> keys = elem.getKeyCount() == 1
+                ? elem.getKeyMap() : new TreeMap<>(elem.getKeyMap());
+            for (Map.Entry<String, String> key : keys.entrySet()) {
+                hasher.putChar('[').putUnencodedChars(key.getKey())
+                    .putChar('=').putUnencodedChars(key.getValue());
+            }
+        }
+    }
+
+    private static long valueFingerprint(Gnmi.TypedValue value) {
+        final Hasher hasher = FINGERPRINT.newHasher().putInt(value.getValueCase().getNumber());
+        switch (value.getValueCase()) {
+            case INT_VAL:
+                hasher.putLong(value.getIntVal());
+                break;
+            case UINT_VAL:
+                hasher.putLong(value.getUintVal());
+                break;
+            case BOOL_VAL:
+                hasher.putBoolean(value.getBoolVal());
+                break;
+            case FLOAT_VAL:
+                hasher.putFloat(value.getFloatVal());
+                break;
+            case STRING_VAL:
+                hasher.putUnencodedChars(value.getStringVal());
+                break;
+            case ASCII_VAL:
+                hasher.putUnencodedChars(value.getAsciiVal());
+                break;
+            default:
+                hasher.putBytes(value.toByteArray());
+        }
+        final long fingerprint = hasher.hash().asLong();
+        // 0 stands for a path without value in the map.
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+}
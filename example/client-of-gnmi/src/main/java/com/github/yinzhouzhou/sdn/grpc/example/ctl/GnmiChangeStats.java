@@ -0,0 +1,41 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the change detection of the gNMI subscriptions, shared by all
+ * the devices of a controller.
+ */
+public final class GnmiChangeStats {
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    void record(int forwardedLeaves, int suppressedLeaves) {
+        forwarded.add(forwardedLeaves);
+        suppressed.add(suppressedLeaves);
+    }
+
+    /**
+     * Number of updates posted because their value changed.
+     *
+     * @return forwarded leaves
+     */
+    public long forwarded() {
+        return forwarded.sum();
+    }
+
+    /**
+     * Number of updates dropped because their value was already known.
+     *
+     * @return suppressed leaves
+     */
+    public long suppressed() {
+        return suppressed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "GnmiChangeStats{forwarded=" + forwarded() + ", suppressed=" + suppressed() + '}';
+    }
+}
@@ -1,22 +1,71 @@
-
-
 package com.github.yinzhouzhou.sdn.grpc.example.ctl;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
 import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
 import com.github.yinzhouzhou.sdn.grpc.client.ctl.AbstractGrpcClientController;
+import com.github.yinzhouzhou.sdn.grpc.client.util.ReconnectPolicy;
+import com.github.yinzhouzhou.sdn.grpc.client.util.ReconnectStats;
 import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiClient;
 import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiController;
 import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiEvent;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.ManagedChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
 
 /**
  * Implementation of gNMI controller.
+ *
+ * <p>The subscription checks of all the clients run on one scheduler owned
+ * by the controller, instead of a thread per device. Broken subscriptions are
+ * restarted following the reconnect policy of the controller. Updates are
+ * delivered to the listeners in per-device batches.
  */
 public class GnmiClientControllerImpl extends AbstractGrpcClientController<GnmiClient, GnmiEvent>
         implements GnmiController {
 
+    private static final Logger LOG = getLogger(GnmiClientControllerImpl.class);
+
+    private static final int DEFAULT_SCHEDULER_THREADS = 2;
+
+    private final ScheduledThreadPoolExecutor subscriptionScheduler;
+    private final ReconnectPolicy reconnectPolicy;
+    private final ReconnectStats reconnectStats = new ReconnectStats();
+    private final GnmiChangeStats changeStats = new GnmiChangeStats();
+    private volatile boolean changeDetection;
+    private volatile long changeRefreshNanos;
+    private final GnmiQueueStats queueStats = new GnmiQueueStats();
+    private volatile GnmiBackpressure backpressure;
+    private final AtomicBoolean demultiplexing = new AtomicBoolean(false);
+
     public GnmiClientControllerImpl() {
+        this(DEFAULT_SCHEDULER_THREADS, ReconnectPolicy.defaultPolicy());
+    }
+
+    /**
+     * Creates a controller.
+     *
+     * @param schedulerThreads number of threads checking the subscriptions of all devices
+     * @param reconnectPolicy backoff between the attempts to restart a broken subscription
+     */
+    public GnmiClientControllerImpl(int schedulerThreads, ReconnectPolicy reconnectPolicy) {
         super("gNMI");
+        checkArgument(schedulerThreads > 0, "schedulerThreads must be positive");
+        this.reconnectPolicy = checkNotNull(reconnectPolicy, "reconnectPolicy");
+        subscriptionScheduler = new ScheduledThreadPoolExecutor(schedulerThreads, new ThreadFactoryBuilder()
+            .setNameFormat("GnmiSubscriptionScheduler-%d")
+            .setDaemon(true)
+            .setUncaughtExceptionHandler((thread, throwable) -> {
+                LOG.error("Uncaught exception on {}", thread.getName(), throwable);
+            }).build());
+        // Unsubscribed devices must not leave their cancelled checks in the queue.
+        subscriptionScheduler.setRemoveOnCancelPolicy(true);
     }
 
     @Override
@@ -24,4 +73,128 @@ public class GnmiClientControllerImpl extends AbstractGrpcClientController<GnmiC
         DeviceId deviceId, ManagedChannel channel) {
         return new GnmiClientImpl(deviceId, channel, this);
     }
+
+    @Override
+    protected DeviceId eventDeviceId(GnmiEvent event) {
+        return event.getSubject().deviceId();
+    }
+
+    /**
+     * Scheduler shared by the subscription managers of all clients.
+     *
+     * @return scheduler
+     */
+    ScheduledExecutorService subscriptionScheduler() {
+        return subscriptionScheduler;
+    }
+
+    ReconnectPolicy reconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Counters of the subscription restarts of all devices.
+     *
+     * @return reconnect counters
+     */
+    public ReconnectStats getReconnectStats() {
+        return reconnectStats;
+    }
+
+    /**
+     * Enables the change detection of the subscriptions created afterwards:
+     * updates repeating the last value of their path are not posted, and
+     * notifications left without updates are not posted at all. Disabled by
+     * default.
+     *
+     * @param changeDetection true to post only the changed values
+     */
+    public void setChangeDetection(boolean changeDetection) {
+        this.changeDetection = changeDetection;
+        this.changeRefreshNanos = 0;
+    }
+
+    /**
+     * Enables the change detection of the subscriptions created afterwards,
+     * and still posts each value once per refresh interval when the device
+     * keeps sending it unchanged. A {@link GnmiTelemetryCache} with a time to
+     * live then keeps the values still streamed, as long as its time to live
+     * exceeds the refresh interval plus the sample interval.
+     *
+     * @param refreshInterval longest time a value is not posted while it does not change
+     * @param unit            unit of the interval
+     */
+    public void setChangeDetection(long refreshInterval, TimeUnit unit) {
+        checkArgument(refreshInterval > 0, "refreshInterval must be positive");
+        this.changeRefreshNanos = unit.toNanos(refreshInterval);
+        this.changeDetection = true;
+    }
+
+    boolean isChangeDetection() {
+        return changeDetection;
+    }
+
+    /**
+     * Interval at which the change detection posts unchanged values again.
+     *
+     * @return interval in nanoseconds, 0 to never post them
+     */
+    long changeRefreshNanos() {
+        return changeRefreshNanos;
+    }
+
+    /**
+     * Sets the backpressure of the subscriptions created afterwards: updates
+     * are queued per Subscribe RPC and handed to the listeners as they keep
+     * up, within the bounds and the overflow policy given. Disabled by
+     * default, updates are then posted as they arrive.
+     *
+     * @param backpressure queue settings, null to disable
+     */
+    public void setBackpressure(GnmiBackpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+
+    public GnmiBackpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * Counters of the queues of the backpressured subscriptions of all devices.
+     *
+     * @return queue counters
+     */
+    public GnmiQueueStats getQueueStats() {
+        return queueStats;
+    }
+
+    /**
+     * Starts handing the events of each device to the consumers of its shared
+     * subscriptions, on the first one.
+     */
+    void demultiplex() {
+        if (demultiplexing.compareAndSet(false, true)) {
+            addEventListener((deviceId, events) -> {
+                final GnmiClient client = get(deviceId);
+                if (client instanceof GnmiClientImpl) {
+                    ((GnmiClientImpl) client).multiplexedEvents(events);
+                }
+            });
+        }
+    }
+
+    /**
+     * Counters of the change detection of all devices.
+     *
+     * @return change detection counters
+     */
+    public GnmiChangeStats getChangeStats() {
+        return changeStats;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        subscriptionScheduler.shutdownNow();
+    }
 }
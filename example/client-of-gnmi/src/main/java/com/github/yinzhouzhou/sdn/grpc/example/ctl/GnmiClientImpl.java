@@ -1,17 +1,27 @@
 
 package com.github.yinzhouzhou.sdn.grpc.example.ctl;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
 import com.github.yinzhouzhou.sdn.grpc.client.ctl.AbstractGrpcClient;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiBlockingClient;
 import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiClient;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiEvent;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiPathListener;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiSubscription;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiUpdate;
 import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
 import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.gNMIGrpc;
 import io.grpc.ManagedChannel;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
 
 /**
  * Implementation of gNMI client.
@@ -26,12 +36,14 @@ public class GnmiClientImpl extends AbstractGrpcClient implements GnmiClient {
             ).build()).build();
 
     private GnmiSubscriptionManager subscribeManager;
+    private final GnmiSubscriptionMultiplexer multiplexer;
 
     GnmiClientImpl(DeviceId deviceId, ManagedChannel managedChannel,
                    GnmiClientControllerImpl controller) {
         super(deviceId, managedChannel, false, controller);
         this.subscribeManager =
                 new GnmiSubscriptionManager(this, deviceId, controller);
+        this.multiplexer = new GnmiSubscriptionMultiplexer(this, deviceId, controller);
     }
 
     @Override
@@ -63,6 +75,12 @@ public class GnmiClientImpl extends AbstractGrpcClient implements GnmiClient {
         return future;
     }
 
+    @Override
+    public GnmiBlockingClient blocking(long timeout, TimeUnit unit) {
+        checkArgument(timeout > 0, "timeout must be positive");
+        return new BlockingClient(timeout, checkNotNull(unit));
+    }
+
     @SuppressWarnings("MethodTypeParameterName")
     private <RES> StreamObserver<RES> unaryObserver(
             final CompletableFuture<RES> future,
@@ -97,6 +115,26 @@ public class GnmiClientImpl extends AbstractGrpcClient implements GnmiClient {
         subscribeManager.unsubscribe();
     }
 
+    @Override
+    public GnmiSubscription subscribe(Gnmi.SubscriptionList subscriptions, GnmiPathListener listener) {
+        return multiplexer.subscribe(subscriptions, listener);
+    }
+
+    @Override
+    public Publisher<GnmiUpdate> publisher(Gnmi.SubscribeRequest request) {
+        return new GnmiUpdatePublisher(this, deviceId, request);
+    }
+
+    /**
+     * Hands the events of this device to the consumers of the shared
+     * subscriptions.
+     *
+     * @param events events of the device
+     */
+    void multiplexedEvents(List<GnmiEvent> events) {
+        multiplexer.dispatch(events);
+    }
+
     @Override
     public CompletableFuture<Boolean> probeService() {
         final CompletableFuture<Boolean> future = new CompletableFuture<>();
@@ -128,6 +166,7 @@ public class GnmiClientImpl extends AbstractGrpcClient implements GnmiClient {
     @Override
     public void shutdown() {
         subscribeManager.shutdown();
+        multiplexer.shutdown();
         super.shutdown();
     }
 
@@ -159,4 +198,34 @@ public class GnmiClientImpl extends AbstractGrpcClient implements GnmiClient {
         runInCancellableContext(() -> stubConsumer.accept(
                 gNMIGrpc.newStub(channel)));
     }
+
+    /**
+     * Blocking calls of this client, with the same deadline for each.
+     */
+    private final class BlockingClient implements GnmiBlockingClient {
+
+        private final gNMIGrpc.gNMIBlockingStub stub = gNMIGrpc.newBlockingStub(channel);
+        private final long timeout;
+        private final TimeUnit unit;
+
+        BlockingClient(long timeout, TimeUnit unit) {
+            this.timeout = timeout;
+            this.unit = unit;
+        }
+
+        @Override
+        public Gnmi.CapabilityResponse capabilities() {
+            return callBlocking(stub, timeout, unit, s -> s.capabilities(Gnmi.CapabilityRequest.getDefaultInstance()));
+        }
+
+        @Override
+        public Gnmi.GetResponse get(Gnmi.GetRequest request) {
+            return callBlocking(stub, timeout, unit, s -> s.get(request));
+        }
+
+        @Override
+        public Gnmi.SetResponse set(Gnmi.SetRequest request) {
+            return callBlocking(stub, timeout, unit, s -> s.set(request));
+        }
+    }
 }
@@ -45,6 +45,8 @@ public final class GnmiClientStartUp {
         //out.println(client.capabilities().get());
         //out.println(client.get(getRequest.build()).get());
         //out.println(client.set(setRequest.build()).get());
+        // 阻塞调用, 每次调用有各自的超时, 适合在虚拟线程上运行
+        //out.println(client.blocking(10, TimeUnit.SECONDS).get(getRequest.build()));
 
         //******** 流式RPC *********//
         Gnmi.SubscribeRequest.Builder subscribeRequest = Gnmi.SubscribeRequest.newBuilder()
@@ -0,0 +1,101 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcEventListener;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiEvent;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiPathListener;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiPathTrie;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiUpdate;
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import java.util.List;
+import org.slf4j.Logger;
+
+/**
+ * Dispatches the updates of the gNMI subscriptions to the
+ * {@link GnmiPathListener}s whose pattern matches their path.
+ *
+ * <p>Register it with {@link GnmiClientControllerImpl#addEventListener}. Each
+ * update and delete walks a {@link GnmiPathTrie} once, instead of every
+ * listener comparing the path of every update. A listener registered under
+ * several patterns matching the same path is called once per pattern.
+ */
+public final class GnmiPathDispatcher implements GrpcEventListener<GnmiEvent> {
+
+    private static final Logger LOG = getLogger(GnmiPathDispatcher.class);
+
+    private final GnmiPathTrie<GnmiPathListener> listeners = new GnmiPathTrie<>();
+
+    /**
+     * Registers a listener for the paths matching a pattern.
+     *
+     * @param pattern  path pattern, see {@link GnmiPathTrie} for the wildcards
+     * @param listener path listener
+     */
+    public void addListener(Gnmi.Path pattern, GnmiPathListener listener) {
+        listeners.add(checkNotNull(pattern), checkNotNull(listener));
+    }
+
+    /**
+     * Unregisters a listener from a pattern.
+     *
+     * @param pattern  path pattern the listener was registered for
+     * @param listener path listener
+     * @return true if the listener was registered for the pattern
+     */
+    public boolean removeListener(Gnmi.Path pattern, GnmiPathListener listener) {
+        return listeners.remove(checkNotNull(pattern), checkNotNull(listener));
+    }
+
+    @Override
+    public void event(DeviceId deviceId, List<GnmiEvent> events) {
+        if (listeners.size() == 0) {
+            return;
+        }
+        for (GnmiEvent event : events) {
+            if (event.getType() == GnmiEvent.Type.UPDATE && event.getSubject() instanceof GnmiUpdate) {
+                dispatch(deviceId, ((GnmiUpdate) event.getSubject()).update());
+            }
+        }
+    }
+
+    /**
+     * Hands the updates and deletes of a notification to the listeners
+     * matching their path.
+     *
+     * @param deviceId     device which sent the notification
+     * @param notification notification
+     */
+    void dispatch(DeviceId deviceId, Gnmi.Notification notification) {
+        if (listeners.size() == 0) {
+            return;
+        }
+        final Gnmi.Path prefix = notification.getPrefix();
+        for (Gnmi.Path delete : notification.getDeleteList()) {
+            listeners.match(prefix, delete, listener -> deleted(listener, deviceId, prefix, delete));
+        }
+        for (Gnmi.Update update : notification.getUpdateList()) {
+            listeners.match(prefix, update.getPath(), listener -> updated(listener, deviceId, prefix, update));
+        }
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    private static void updated(GnmiPathListener listener, DeviceId deviceId, Gnmi.Path prefix, Gnmi.Update update) {
+        try {
+            listener.updated(deviceId, prefix, update);
+        } catch (Throwable e) {
+            LOG.error("Exception in gNMI path listener {} for {}", listener, deviceId, e);
+        }
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    private static void deleted(GnmiPathListener listener, DeviceId deviceId, Gnmi.Path prefix, Gnmi.Path path) {
+        try {
+            listener.deleted(deviceId, prefix, path);
+        } catch (Throwable e) {
+            LOG.error("Exception in gNMI path listener {} for {}", listener, deviceId, e);
+        }
+    }
+}
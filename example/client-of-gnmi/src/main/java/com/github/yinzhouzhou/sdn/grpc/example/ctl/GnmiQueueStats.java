@@ -0,0 +1,104 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the queues of the backpressured Subscribe RPCs, shared by all
+ * the devices of a controller.
+ */
+public final class GnmiQueueStats {
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+
+    void recordQueued(int depth) {
+        queued.increment();
+        maxDepth.accumulate(depth);
+    }
+
+    void recordPosted(int count) {
+        queued.add(-count);
+        inFlight.add(count);
+    }
+
+    void recordDelivered(int count) {
+        inFlight.add(-count);
+        delivered.add(count);
+    }
+
+    void recordDropped(int count) {
+        queued.add(-count);
+        dropped.add(count);
+    }
+
+    void recordConflated(int queuedBefore, int leavesBefore, int leavesAfter) {
+        queued.add(1 - queuedBefore);
+        conflated.add(leavesBefore - leavesAfter);
+    }
+
+    /**
+     * Number of updates currently waiting in the queues.
+     *
+     * @return queue depth of all RPCs
+     */
+    public long queued() {
+        return queued.sum();
+    }
+
+    /**
+     * Largest number of updates which waited in the queue of one RPC.
+     *
+     * @return maximum queue depth
+     */
+    public long maxDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * Number of updates handed to the listeners and not delivered yet.
+     *
+     * @return updates being delivered
+     */
+    public long inFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Number of updates delivered to the listeners.
+     *
+     * @return delivered updates
+     */
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Number of updates dropped by {@link GnmiBackpressure.OverflowPolicy#DROP_OLDEST}.
+     *
+     * @return dropped updates
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Number of path values and deletes replaced by a later one of their path
+     * by {@link GnmiBackpressure.OverflowPolicy#CONFLATE_PER_PATH}.
+     *
+     * @return conflated leaves
+     */
+    public long conflated() {
+        return conflated.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "GnmiQueueStats{queued=" + queued() + ", maxDepth=" + maxDepth() + ", inFlight=" + inFlight()
+            + ", delivered=" + delivered() + ", dropped=" + dropped() + ", conflated=" + conflated() + '}';
+    }
+}
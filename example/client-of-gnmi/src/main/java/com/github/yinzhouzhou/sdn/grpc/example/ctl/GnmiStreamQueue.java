@@ -0,0 +1,206 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import static com.github.yinzhouzhou.sdn.grpc.example.ctl.GnmiTelemetryCache.isBelow;
+import static com.github.yinzhouzhou.sdn.grpc.example.ctl.GnmiTelemetryCache.pathKey;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiEvent;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiUpdate;
+import com.github.yinzhouzhou.sdn.grpc.example.ctl.GnmiBackpressure.OverflowPolicy;
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import io.grpc.stub.ClientCallStreamObserver;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Queue of the updates of one backpressured Subscribe RPC, between the gRPC
+ * thread receiving them and the listeners.
+ *
+ * <p>The queue hands its updates to the controller in one chunk, and the
+ * next chunk only once the listeners are done with it, so that a device
+ * never has more than one chunk of an RPC in delivery. Updates received
+ * meanwhile are queued. With {@link OverflowPolicy#BLOCK} the RPC only reads
+ * what the capacity allows: it starts with that many messages requested and
+ * requests as many as are delivered, so a slow listener fills the HTTP/2 flow
+ * control window and the device waits. The other policies leave the gRPC flow
+ * control automatic and apply to the updates overflowing the queue.
+ */
+final class GnmiStreamQueue {
+
+    private final DeviceId deviceId;
+    private final GnmiClientControllerImpl controller;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final GnmiQueueStats stats;
+
+    // Guarded by this.
+    private final Deque<GnmiUpdate> queue = new ArrayDeque<>();
+    private boolean delivering;
+    // Request side of the RPC when it is flow controlled here.
+    private volatile ClientCallStreamObserver<?> requestStream;
+
+    GnmiStreamQueue(DeviceId deviceId, GnmiClientControllerImpl controller, GnmiBackpressure backpressure) {
+        this.deviceId = deviceId;
+        this.controller = controller;
+        this.capacity = backpressure.capacity();
+        this.overflowPolicy = backpressure.overflowPolicy();
+        this.stats = controller.getQueueStats();
+    }
+
+    /**
+     * Called before the RPC starts, to take over its flow control.
+     *
+     * @param stream request side of the RPC
+     */
+    void start(ClientCallStreamObserver<?> stream) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            stream.disableAutoRequestWithInitial(capacity);
+            requestStream = stream;
+        }
+    }
+
+    /**
+     * Queues an update received on the RPC.
+     *
+     * @param update update
+     */
+    void offer(GnmiUpdate update) {
+        final List<GnmiEvent> chunk;
+        synchronized (this) {
+            GnmiUpdate newest = update;
+            // A blocking RPC cannot overflow: it did not request more than the capacity.
+            if (queue.size() >= capacity && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                final GnmiUpdate dropped = queue.poll();
+                stats.recordDropped(1);
+                if (dropped.syncResponse()) {
+                    // The listeners still need to know the RPC is in sync, the next update tells it.
+                    if (queue.isEmpty()) {
+                        newest = inSync(newest);
+                    } else {
+                        queue.addFirst(inSync(queue.poll()));
+                    }
+                }
+            }
+            if (queue.size() >= capacity && overflowPolicy == OverflowPolicy.CONFLATE_PER_PATH) {
+                conflate(newest);
+            } else {
+                queue.add(newest);
+                stats.recordQueued(queue.size());
+            }
+            if (delivering) {
+                return;
+            }
+            chunk = drain();
+        }
+        post(chunk);
+    }
+
+    /**
+     * Gives back the credit of a message received on the RPC but not queued,
+     * e.g. one left without updates by the change detection.
+     */
+    void skipped() {
+        final ClientCallStreamObserver<?> stream = requestStream;
+        if (stream != null) {
+            stream.request(1);
+        }
+    }
+
+    private List<GnmiEvent> drain() {
+        final List<GnmiEvent> chunk = new ArrayList<>(queue.size());
+        for (GnmiUpdate update : queue) {
+            chunk.add(new GnmiEvent(GnmiEvent.Type.UPDATE, update));
+        }
+        queue.clear();
+        delivering = true;
+        stats.recordPosted(chunk.size());
+        return chunk;
+    }
+
+    private void post(List<GnmiEvent> chunk) {
+        final int count = chunk.size();
+        controller.postEvents(deviceId, chunk, () -> delivered(count));
+    }
+
+    private void delivered(int count) {
+        stats.recordDelivered(count);
+        final ClientCallStreamObserver<?> stream = requestStream;
+        if (stream != null) {
+            // Requests of a closed RPC are ignored.
+            stream.request(count);
+        }
+        final List<GnmiEvent> chunk;
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                delivering = false;
+                return;
+            }
+            chunk = drain();
+        }
+        post(chunk);
+    }
+
+    /**
+     * Replaces the queued updates and a new one with a single update holding
+     * the latest value of each of their paths. Deletes are kept, and drop the
+     * values received before them below their path; the values received after
+     * a delete still follow it, as the deletes of a notification apply first.
+     */
+    private void conflate(GnmiUpdate newest) {
+        final int queuedBefore = queue.size();
+        queue.add(newest);
+        final TreeMap<String, Gnmi.Path> deletes = new TreeMap<>();
+        final TreeMap<String, Gnmi.Update> values = new TreeMap<>();
+        int leaves = 0;
+        long timestamp = 0;
+        boolean syncResponse = false;
+        for (GnmiUpdate update : queue) {
+            final Gnmi.Notification notification = update.update();
+            final Gnmi.Path prefix = notification.getPrefix();
+            final String prefixKey = pathKey(prefix);
+            for (Gnmi.Path delete : notification.getDeleteList()) {
+                final String key = prefixKey + pathKey(delete);
+                final Map<String, Gnmi.Update> below = key.isEmpty()
+                    ? values : values.subMap(key, true, key + Character.MAX_VALUE, false);
+                below.keySet().removeIf(candidate -> isBelow(candidate, key));
+                deletes.put(key, fullPath(prefix, delete));
+            }
+            for (Gnmi.Update value : notification.getUpdateList()) {
+                values.put(prefixKey + pathKey(value.getPath()),
+                    value.toBuilder().setPath(fullPath(prefix, value.getPath())).build());
+            }
+            leaves += notification.getDeleteCount() + notification.getUpdateCount();
+            timestamp = Math.max(timestamp, notification.getTimestamp());
+            syncResponse |= update.syncResponse();
+        }
+        final Gnmi.Notification merged = Gnmi.Notification.newBuilder()
+            .setTimestamp(timestamp)
+            // Target and origin of the RPC, the elements are in the paths.
+            .setPrefix(newest.update().getPrefix().toBuilder().clearElem())
+            .addAllDelete(deletes.values())
+            .addAllUpdate(values.values())
+            .build();
+        queue.clear();
+        queue.add(new GnmiUpdate(deviceId, merged, syncResponse, newest.streamId(), newest.rpcId()));
+        stats.recordConflated(queuedBefore, leaves, deletes.size() + values.size());
+    }
+
+    private static GnmiUpdate inSync(GnmiUpdate update) {
+        return update.syncResponse() ? update : new GnmiUpdate(
+            update.deviceId(), update.update(), true, update.streamId(), update.rpcId());
+    }
+
+    private static Gnmi.Path fullPath(Gnmi.Path prefix, Gnmi.Path path) {
+        if (prefix.getElemCount() == 0) {
+            return path;
+        }
+        return path.toBuilder().clearElem()
+            .addAllElem(prefix.getElemList())
+            .addAllElem(path.getElemList())
+            .build();
+    }
+}
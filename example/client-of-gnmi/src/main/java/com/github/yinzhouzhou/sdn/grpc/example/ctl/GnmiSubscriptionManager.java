@@ -1,25 +1,24 @@
-
-
 package com.github.yinzhouzhou.sdn.grpc.example.ctl;
 
 
-import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.util.ReconnectPolicy;
+import com.github.yinzhouzhou.sdn.grpc.client.util.ReconnectStats;
 import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiEvent;
 import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiUpdate;
 import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.ClientCallStreamObserver;
-import io.grpc.stub.StreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import java.net.ConnectException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.concurrent.NotThreadSafe;
 import org.slf4j.Logger;
 
@@ -27,30 +26,63 @@ import org.slf4j.Logger;
  * A manager for the gNMI Subscribe RPC that opportunistically starts new RPC
  * (e.g. when one fails because of errors) and posts subscribe events via the
  * gNMI controller.
+ *
+ * <p>When the RPC breaks, attempts to restart it are scheduled on the
+ * scheduler shared by all the managers of the controller, following its
+ * {@link ReconnectPolicy}. An attempt whose server is not known to be reachable
+ * probes it first, and continues when the probe completes, without blocking
+ * the scheduler. The backoff is reset once the new RPC receives a response.
+ *
+ * <p>A new request does not close the running RPC first, as gNMI cannot change
+ * the paths of a running RPC: the new RPC is started and the old one is only
+ * cancelled once the new one has sent its {@code syncResponse}, or after a
+ * timeout for devices which never send it. Values may be posted twice during
+ * the overlap, but none are missed.
+ *
+ * <p>With change detection enabled on the controller, the updates repeating
+ * the last value of their path are stripped before the events are posted.
+ * Each RPC has its own filter, as the device sends all its values again on a
+ * new one. With a refresh interval, the unchanged values are still posted once
+ * per interval.
+ *
+ * <p>With backpressure set on the controller, each RPC queues its updates in
+ * a {@link GnmiStreamQueue}, which bounds them and, for the blocking policy,
+ * only reads from the device as fast as the listeners consume.
+ *
+ * <p>Updates carry the stream ID of the manager and the ID of their RPC, so
+ * that listeners such as the {@link GnmiTelemetryCache} can tell the values
+ * which a restarted or replaced RPC did not send again.
  */
 @NotThreadSafe
 final class GnmiSubscriptionManager {
 
-    // FIXME: make this configurable
-    private static final long DEFAULT_RECONNECT_DELAY = 5; // Seconds
-
     private static final Logger LOG = getLogger(GnmiSubscriptionManager.class);
 
+    private static final long HANDOVER_TIMEOUT_SECONDS = 30;
+
+    // Stream and RPC IDs, increasing so that a new RPC has a greater ID than the previous ones.
+    private static final AtomicLong IDS = new AtomicLong();
+
     private final GnmiClientImpl client;
     private final DeviceId deviceId;
     private final GnmiClientControllerImpl controller;
-    private final StreamObserver<Gnmi.SubscribeResponse> responseObserver;
+    private final long streamId = IDS.incrementAndGet();
 
-    private final ScheduledExecutorService streamCheckerExecutor =
-        newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
-            .setNameFormat("GnmiSubscriptionManager-%d")
-            .setUncaughtExceptionHandler((thread, throwable) -> {
-                LOG.error("Uncaught exception on {}", thread.getName(), throwable);
-            }).build());
+    private final ScheduledExecutorService scheduler;
+    private final ReconnectPolicy reconnectPolicy;
+    private final ReconnectStats reconnectStats;
 
-    private Future<?> checkTask;
+    private Future<?> reconnectTask;
+    // Incremented on unsubscribe, so that pending attempts and probes are ignored.
+    private long reconnectGeneration;
+    private int reconnectAttempt;
+    // When the RPC broke, 0 while it is healthy.
+    private volatile long lostAtNanos;
 
+    private InternalStreamResponseObserver responseObserver;
     private ClientCallStreamObserver<Gnmi.SubscribeRequest> requestObserver;
+    // RPC of the previous request, running until the new one is in sync.
+    private ClientCallStreamObserver<Gnmi.SubscribeRequest> replacedRequestObserver;
     private Gnmi.SubscribeRequest existingSubscription;
     private AtomicBoolean active = new AtomicBoolean(false);
 
@@ -59,7 +91,18 @@ final class GnmiSubscriptionManager {
         this.client = client;
         this.deviceId = deviceId;
         this.controller = controller;
-        this.responseObserver = new InternalStreamResponseObserver();
+        this.scheduler = controller.subscriptionScheduler();
+        this.reconnectPolicy = controller.reconnectPolicy();
+        this.reconnectStats = controller.getReconnectStats();
+    }
+
+    /**
+     * ID carried by the updates of all the RPCs of this manager.
+     *
+     * @return stream ID
+     */
+    long streamId() {
+        return streamId;
     }
 
     synchronized void subscribe(Gnmi.SubscribeRequest request) {
@@ -72,25 +115,17 @@ final class GnmiSubscriptionManager {
                     deviceId);
                 return;
             }
-            LOG.debug("Cancelling existing subscription for {} before " + "starting a new one", deviceId);
-            complete();
+            LOG.debug("Replacing subscription for {}, keeping the current RPC until the new one is in sync",
+                deviceId);
+            handOver();
         }
         existingSubscription = request;
         sendSubscribeRequest();
-        if (checkTask != null) {
-            checkTask = streamCheckerExecutor.scheduleAtFixedRate(
-                this::checkSubscription, 0,
-                DEFAULT_RECONNECT_DELAY,
-                TimeUnit.SECONDS);
-        }
 
     }
 
     synchronized void unsubscribe() {
-        if (checkTask != null) {
-            checkTask.cancel(false);
-            checkTask = null;
-        }
+        cancelReconnect();
         existingSubscription = null;
         complete();
 
@@ -99,28 +134,167 @@ final class GnmiSubscriptionManager {
     public void shutdown() {
         LOG.debug("Shutting down gNMI subscription manager for {}", deviceId);
         unsubscribe();
-        streamCheckerExecutor.shutdownNow();
     }
 
-    private synchronized void checkSubscription() {
-        if (existingSubscription != null && !active.get()) {
-            if (client.isServerReachable() || Futures.getUnchecked(client.probeService())) {
-                LOG.info("Re-starting Subscribe RPC for {}...", deviceId);
-                sendSubscribeRequest();
-            } else {
-                LOG.debug("Not restarting Subscribe RPC for {}, server is NOT reachable",
-                    deviceId);
-            }
+    /**
+     * Keeps the current RPC running aside, so that a new one can start.
+     */
+    private void handOver() {
+        final ClientCallStreamObserver<Gnmi.SubscribeRequest> current = requestObserver;
+        if (current == null) {
+            complete();
+            return;
+        }
+        cancelReplaced();
+        replacedRequestObserver = current;
+        requestObserver = null;
+        responseObserver = null;
+        active.set(false);
+        try {
+            scheduler.schedule(() -> cancelReplaced(current), HANDOVER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            cancelReplaced();
+        }
+    }
+
+    private synchronized void cancelReplaced(ClientCallStreamObserver<Gnmi.SubscribeRequest> replaced) {
+        if (replacedRequestObserver == replaced) {
+            LOG.debug("Cancelling replaced Subscribe RPC for {}", deviceId);
+            cancelReplaced();
+        }
+    }
+
+    private void cancelReplaced() {
+        if (replacedRequestObserver != null) {
+            replacedRequestObserver.cancel("Replaced", null);
+            replacedRequestObserver = null;
+        }
+    }
+
+    /**
+     * Called when an RPC has sent all its values, to close the RPC it replaces.
+     */
+    private synchronized void inSync(InternalStreamResponseObserver observer) {
+        if (observer == responseObserver) {
+            cancelReplaced();
+        }
+    }
+
+    private void cancelReconnect() {
+        if (reconnectTask != null) {
+            reconnectTask.cancel(false);
+            reconnectTask = null;
+        }
+        reconnectGeneration++;
+        reconnectAttempt = 0;
+        lostAtNanos = 0;
+    }
+
+    /**
+     * Called when the current RPC is over, to start reconnecting if the
+     * subscription is still wanted.
+     */
+    private synchronized void streamClosed(InternalStreamResponseObserver observer) {
+        if (observer != responseObserver) {
+            // Callback of an RPC already replaced or cancelled.
+            return;
+        }
+        complete();
+        if (existingSubscription == null || reconnectTask != null) {
+            return;
+        }
+        if (lostAtNanos == 0) {
+            lostAtNanos = System.nanoTime();
+        }
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        final long generation = reconnectGeneration;
+        final long delay = reconnectPolicy.delayMillis(reconnectAttempt++);
+        LOG.debug("Restarting Subscribe RPC for {} in {} ms (attempt {})", deviceId, delay, reconnectAttempt);
+        try {
+            reconnectTask = scheduler.schedule(() -> reconnect(generation), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Not restarting Subscribe RPC for {}, controller is closed", deviceId);
+            reconnectTask = null;
+        }
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    private synchronized void reconnect(long generation) {
+        if (generation != reconnectGeneration) {
+            return;
+        }
+        if (existingSubscription == null || active.get()) {
+            reconnectTask = null;
+            return;
+        }
+        reconnectStats.recordAttempt();
+        if (client.isServerReachable()) {
+            resubscribe();
+            return;
+        }
+        // Keep reconnectTask set until the probe completes, so that no other attempt starts.
+        try {
+            client.probeService().whenComplete(
+                (reachable, error) -> probed(generation, Boolean.TRUE.equals(reachable)));
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to probe {}", deviceId, e);
+            scheduleReconnect();
+        }
+    }
+
+    private synchronized void probed(long generation, boolean reachable) {
+        if (generation != reconnectGeneration) {
+            return;
+        }
+        if (reachable) {
+            resubscribe();
+        } else {
+            LOG.debug("Not restarting Subscribe RPC for {}, server is NOT reachable",
+                deviceId);
+            scheduleReconnect();
+        }
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    private void resubscribe() {
+        reconnectTask = null;
+        if (existingSubscription == null || active.get()) {
+            return;
+        }
+        LOG.info("Re-starting Subscribe RPC for {}...", deviceId);
+        try {
+            sendSubscribeRequest();
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to restart Subscribe RPC for {}", deviceId, e);
+            complete();
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Called on the first response of an RPC started after a failure.
+     */
+    private synchronized void recovered() {
+        if (lostAtNanos != 0) {
+            reconnectStats.recordReconnect(System.nanoTime() - lostAtNanos);
+            LOG.info("Subscribe RPC for {} is back after {} attempt(s)", deviceId, reconnectAttempt);
+            lostAtNanos = 0;
+            reconnectAttempt = 0;
         }
     }
 
     private synchronized void sendSubscribeRequest() {
         if (requestObserver == null) {
             LOG.debug("Starting new Subscribe RPC for {}...", deviceId);
+            final InternalStreamResponseObserver observer = new InternalStreamResponseObserver();
+            responseObserver = observer;
             client.execRpcNoTimeout(
                 s -> requestObserver =
                     (ClientCallStreamObserver<Gnmi.SubscribeRequest>)
-                        s.subscribe(responseObserver)
+                        s.subscribe(observer)
             );
         }
         requestObserver.onNext(existingSubscription);
@@ -129,6 +303,8 @@ final class GnmiSubscriptionManager {
 
     public synchronized void complete() {
         active.set(false);
+        responseObserver = null;
+        cancelReplaced();
         if (requestObserver != null) {
             requestObserver.onCompleted();
             requestObserver.cancel("Terminated", null);
@@ -137,30 +313,81 @@ final class GnmiSubscriptionManager {
     }
 
     /**
-     * Handles messages received from the device on the Subscribe RPC.
+     * Handles messages received from the device on one Subscribe RPC.
      */
     private final class InternalStreamResponseObserver
-        implements StreamObserver<Gnmi.SubscribeResponse> {
+        implements ClientResponseObserver<Gnmi.SubscribeRequest, Gnmi.SubscribeResponse> {
+
+        private final long rpcId = IDS.incrementAndGet();
+        // Values seen on this RPC, null when change detection is disabled.
+        private final GnmiChangeFilter changeFilter = controller.isChangeDetection()
+            ? new GnmiChangeFilter(controller.getChangeStats(), controller.changeRefreshNanos()) : null;
+        // Updates waiting for the listeners, null without backpressure.
+        private final GnmiStreamQueue streamQueue = controller.getBackpressure() != null
+            ? new GnmiStreamQueue(deviceId, controller, controller.getBackpressure()) : null;
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Gnmi.SubscribeRequest> requestStream) {
+            if (streamQueue != null) {
+                streamQueue.start(requestStream);
+            }
+        }
 
         @Override
         @SuppressWarnings("IllegalCatch")
         public void onNext(Gnmi.SubscribeResponse message) {
+            if (lostAtNanos != 0) {
+                recovered();
+            }
+            boolean queued = false;
             try {
                 if (LOG.isTraceEnabled()) {
                     LOG.trace("Received SubscribeResponse from {}: {}",
                         deviceId, message.toString());
                 }
-                controller.postEvent(new GnmiEvent(GnmiEvent.Type.UPDATE, new GnmiUpdate(
-                    deviceId, message.getUpdate(), message.getSyncResponse())));
+                queued = postUpdate(message);
+                if (message.getSyncResponse()) {
+                    inSync(this);
+                }
             } catch (Throwable ex) {
                 LOG.error("Exception processing SubscribeResponse from {}", deviceId,
                     ex);
+            } finally {
+                if (!queued && streamQueue != null) {
+                    streamQueue.skipped();
+                }
             }
         }
 
+        /**
+         * Posts the update of a message, or queues it with backpressure.
+         *
+         * @return true if the update is queued
+         */
+        private boolean postUpdate(Gnmi.SubscribeResponse message) {
+            Gnmi.Notification notification = message.getUpdate();
+            if (changeFilter != null && message.hasUpdate()) {
+                notification = changeFilter.filter(notification);
+                if (notification == null && !message.getSyncResponse()) {
+                    return false;
+                }
+                if (notification == null) {
+                    notification = Gnmi.Notification.getDefaultInstance();
+                }
+            }
+            final GnmiUpdate update = new GnmiUpdate(
+                deviceId, notification, message.getSyncResponse(), streamId, rpcId);
+            if (streamQueue != null) {
+                streamQueue.offer(update);
+                return true;
+            }
+            controller.postEvent(deviceId, new GnmiEvent(GnmiEvent.Type.UPDATE, update));
+            return false;
+        }
+
         @Override
         public void onError(Throwable throwable) {
-            complete();
+            streamClosed(this);
             if (throwable instanceof StatusRuntimeException) {
                 StatusRuntimeException sre = (StatusRuntimeException) throwable;
                 if (sre.getStatus().getCause() instanceof ConnectException) {
@@ -177,20 +404,8 @@ final class GnmiSubscriptionManager {
 
         @Override
         public void onCompleted() {
-            complete();
+            streamClosed(this);
             LOG.warn("Subscribe RPC for {} has completed", deviceId);
         }
     }
-
-    @Override
-    @SuppressWarnings("NoFinalizer")
-    protected void finalize() throws Throwable {
-        if (!streamCheckerExecutor.isShutdown()) {
-            LOG.error("Finalizing object but executor is still active! BUG? Shutting down...");
-            shutdown();
-        }
-        super.finalize();
-    }
 }
-
-
@@ -0,0 +1,207 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiEvent;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiPathListener;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiPathTrie;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiSubscription;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiUpdate;
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+
+/**
+ * Merges the subscriptions of the consumers of one device into as few
+ * Subscribe RPCs as possible, and hands the updates back to the consumers.
+ *
+ * <p>Subscription lists sharing their settings, i.e. equal once their
+ * subscriptions are removed, share one RPC, run by its own
+ * {@link GnmiSubscriptionManager}. Subscriptions are reference counted: one
+ * already streamed for another consumer does not touch the RPC, and only a
+ * new one replaces it, without gap. Releasing the last reference of a
+ * subscription does not replace the RPC either, as gNMI cannot drop paths from
+ * a running RPC; the path keeps streaming, unseen by the consumers, until the
+ * next change of the RPC. The RPC is closed with its last subscription.
+ *
+ * <p>Each shared RPC hands its updates to its own consumers only, through a
+ * {@link GnmiPathDispatcher} matching them against their paths; updates of
+ * the other RPCs of the device, shared or not, are not theirs. While a new RPC
+ * replaces the running one, the consumers get the updates of both, so the
+ * consumers already subscribed also get the values the new RPC sends first
+ * again. The updates of the replaced RPC are dropped once the new one has sent
+ * its {@code syncResponse}. A consumer joining a running RPC does not receive
+ * the values already sent: it can read them from a
+ * {@link GnmiTelemetryCache}.
+ */
+final class GnmiSubscriptionMultiplexer {
+
+    private static final Logger LOG = getLogger(GnmiSubscriptionMultiplexer.class);
+
+    private static final Gnmi.PathElem ANY_ELEMENTS = Gnmi.PathElem.newBuilder()
+        .setName(GnmiPathTrie.ANY_ELEMENTS).build();
+
+    private final GnmiClientImpl client;
+    private final DeviceId deviceId;
+    private final GnmiClientControllerImpl controller;
+    // Guarded by this.
+    private final Map<Gnmi.SubscriptionList, SharedRpc> rpcs = Maps.newHashMap();
+    // Shared RPCs by the stream ID of their manager, read by the delivery.
+    private final ConcurrentMap<Long, SharedRpc> streams = Maps.newConcurrentMap();
+
+    GnmiSubscriptionMultiplexer(GnmiClientImpl client, DeviceId deviceId, GnmiClientControllerImpl controller) {
+        this.client = client;
+        this.deviceId = deviceId;
+        this.controller = controller;
+    }
+
+    GnmiSubscription subscribe(Gnmi.SubscriptionList subscriptions, GnmiPathListener listener) {
+        checkNotNull(listener);
+        checkArgument(subscriptions.getMode() == Gnmi.SubscriptionList.Mode.STREAM,
+            "Only STREAM subscriptions can be shared");
+        checkArgument(subscriptions.getSubscriptionCount() > 0, "No subscription");
+        controller.demultiplex();
+        final List<Gnmi.Path> patterns = Lists.newArrayList();
+        for (Gnmi.Subscription subscription : subscriptions.getSubscriptionList()) {
+            // The path and everything below it.
+            final Gnmi.Path pattern = Gnmi.Path.newBuilder()
+                .addAllElem(subscriptions.getPrefix().getElemList())
+                .addAllElem(subscription.getPath().getElemList())
+                .addElem(ANY_ELEMENTS)
+                .build();
+            patterns.add(pattern);
+        }
+        final Gnmi.SubscriptionList settings = subscriptions.toBuilder().clearSubscription().build();
+        final SharedRpc rpc;
+        synchronized (this) {
+            rpc = rpcs.computeIfAbsent(settings, SharedRpc::new);
+            for (Gnmi.Path pattern : patterns) {
+                rpc.dispatcher.addListener(pattern, listener);
+            }
+            try {
+                rpc.retain(subscriptions.getSubscriptionList());
+            } catch (RuntimeException e) {
+                // E.g. the client is shut down: the caller gets no subscription to close.
+                release(rpc, subscriptions.getSubscriptionList(), patterns, listener);
+                throw e;
+            }
+        }
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        return () -> {
+            if (closed.compareAndSet(false, true)) {
+                release(rpc, subscriptions.getSubscriptionList(), patterns, listener);
+            }
+        };
+    }
+
+    private synchronized void release(SharedRpc rpc, List<Gnmi.Subscription> subscriptions,
+                                      List<Gnmi.Path> patterns, GnmiPathListener listener) {
+        for (Gnmi.Path pattern : patterns) {
+            rpc.dispatcher.removeListener(pattern, listener);
+        }
+        if (rpcs.get(rpc.settings) == rpc && rpc.release(subscriptions)) {
+            rpcs.remove(rpc.settings);
+            streams.remove(rpc.manager.streamId());
+        }
+    }
+
+    /**
+     * Hands the updates of the device to the consumers of the RPCs which
+     * received them.
+     *
+     * @param events events of the device
+     */
+    void dispatch(List<GnmiEvent> events) {
+        for (GnmiEvent event : events) {
+            if (event.getType() == GnmiEvent.Type.UPDATE && event.getSubject() instanceof GnmiUpdate) {
+                final GnmiUpdate update = (GnmiUpdate) event.getSubject();
+                final SharedRpc rpc = streams.get(update.streamId());
+                if (rpc != null && rpc.accept(update)) {
+                    rpc.dispatcher.dispatch(deviceId, update.update());
+                }
+            }
+        }
+    }
+
+    synchronized void shutdown() {
+        rpcs.values().forEach(rpc -> rpc.manager.shutdown());
+        rpcs.clear();
+        streams.clear();
+    }
+
+    /**
+     * Subscribe RPC shared by the subscription lists with the same settings.
+     */
+    private final class SharedRpc {
+
+        private final Gnmi.SubscriptionList settings;
+        private final GnmiSubscriptionManager manager;
+        private final GnmiPathDispatcher dispatcher = new GnmiPathDispatcher();
+        // Consumers of each subscription, in subscription order.
+        private final Map<Gnmi.Subscription, Integer> references = Maps.newLinkedHashMap();
+        // Latest RPC of the manager, used by the delivery of the device only.
+        private long rpcId;
+        private boolean synced;
+
+        SharedRpc(Gnmi.SubscriptionList settings) {
+            this.settings = settings;
+            this.manager = new GnmiSubscriptionManager(client, deviceId, controller);
+            streams.put(manager.streamId(), this);
+        }
+
+        /**
+         * Tells whether to dispatch an update of the manager: the updates of
+         * a replaced RPC are dispatched until the RPC replacing it is in sync.
+         */
+        boolean accept(GnmiUpdate update) {
+            if (update.rpcId() > rpcId) {
+                rpcId = update.rpcId();
+                synced = false;
+            } else if (update.rpcId() < rpcId && synced) {
+                return false;
+            }
+            if (update.syncResponse() && update.rpcId() == rpcId) {
+                synced = true;
+            }
+            return true;
+        }
+
+        void retain(List<Gnmi.Subscription> subscriptions) {
+            boolean added = false;
+            for (Gnmi.Subscription subscription : subscriptions) {
+                added |= references.merge(subscription, 1, Integer::sum) == 1;
+            }
+            if (added) {
+                LOG.debug("Subscribing {} to {} paths", deviceId, references.size());
+                manager.subscribe(Gnmi.SubscribeRequest.newBuilder()
+                    .setSubscribe(settings.toBuilder().addAllSubscription(references.keySet()))
+                    .build());
+            }
+        }
+
+        /**
+         * Releases subscriptions, and closes the RPC once none is left.
+         *
+         * @return true if the RPC is closed
+         */
+        boolean release(List<Gnmi.Subscription> subscriptions) {
+            for (Gnmi.Subscription subscription : subscriptions) {
+                references.computeIfPresent(subscription, (key, count) -> count == 1 ? null : count - 1);
+            }
+            if (references.isEmpty()) {
+                LOG.debug("Closing shared Subscribe RPC for {}", deviceId);
+                manager.shutdown();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcEventListener;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiEvent;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiUpdate;
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Last value of each path streamed by the gNMI devices, to answer Get-style
+ * queries without a Get RPC.
+ *
+ * <p>Register it with {@link GnmiClientControllerImpl#addEventListener} to feed
+ * it from the Subscribe RPCs. Updates replace the value of their path and
+ * deletes remove the path and everything below it. A {@code syncResponse}
+ * marks the device as synchronized and, on an RPC restarting or replacing an
+ * earlier RPC of its subscription, drops the paths cached from that
+ * subscription which the new RPC did not send again. The values of the earlier
+ * RPC are kept until then, and ignored afterwards. Updates which do not tell
+ * their RPC are never dropped this way.
+ *
+ * <p>Paths are kept per device in a sorted map keyed by their canonical
+ * string, so that the values of a subtree are one range of the map. Entries
+ * older than the time to live are treated as missing and removed when read or
+ * by {@link #evictExpired()}; paths are no longer added once the estimated
+ * memory of the cache reaches its budget.
+ */
+public final class GnmiTelemetryCache implements GrpcEventListener<GnmiEvent> {
+
+    // Rough size of an entry, its key string and its skip list node, on top of the value.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long ttlNanos;
+    private final long maxBytes;
+
+    private final ConcurrentMap<DeviceId, DeviceCache> devices = Maps.newConcurrentMap();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private GnmiTelemetryCache(Builder builder) {
+        this.ttlNanos = builder.ttlNanos;
+        this.maxBytes = builder.maxBytes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void event(DeviceId deviceId, List<GnmiEvent> events) {
+        for (GnmiEvent event : events) {
+            if (event.getType() == GnmiEvent.Type.UPDATE && event.getSubject() instanceof GnmiUpdate) {
+                apply((GnmiUpdate) event.getSubject());
+            }
+        }
+    }
+
+    /**
+     * Applies an update of the Subscribe RPC. Updates of one device must be
+     * applied one at a time, as the controller delivers them.
+     *
+     * @param update update
+     */
+    public void apply(GnmiUpdate update) {
+        final DeviceCache device = devices.computeIfAbsent(update.deviceId(), id -> new DeviceCache());
+        if (!device.accept(update.streamId(), update.rpcId())) {
+            return;
+        }
+        final Gnmi.Notification notification = update.update();
+        final long now = System.nanoTime();
+        final Gnmi.Path prefix = notification.getPrefix();
+        final String prefixKey = pathKey(prefix);
+        for (Gnmi.Path delete : notification.getDeleteList()) {
+            device.removeSubtree(prefixKey + pathKey(delete));
+        }
+        for (Gnmi.Update value : notification.getUpdateList()) {
+            final Gnmi.Update full = prefix.getElemCount() == 0 ? value : value.toBuilder()
+                .setPath(value.getPath().toBuilder().clearElem()
+                    .addAllElem(prefix.getElemList()).addAllElem(value.getPath().getElemList()))
+                .build();
+            device.put(prefixKey + pathKey(value.getPath()),
+                new Entry(full, now, update.streamId(), update.rpcId()));
+        }
+        if (update.syncResponse()) {
+            device.sync(update.streamId(), update.rpcId());
+        }
+    }
+
+    /**
+     * Returns the last value of a path.
+     *
+     * @param deviceId device ID
+     * @param path     full path, without wildcards
+     * @return last update of the path, or null if not cached
+     */
+    public Gnmi.Update get(DeviceId deviceId, Gnmi.Path path) {
+        final DeviceCache device = devices.get(checkNotNull(deviceId));
+        final Entry entry = device == null ? null : device.get(pathKey(checkNotNull(path)), System.nanoTime());
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.update;
+    }
+
+    /**
+     * Returns the last values of a path and of all the paths below it.
+     *
+     * @param deviceId device ID
+     * @param path     path of the subtree, without wildcards
+     * @return updates in path order, empty if none is cached
+     */
+    public List<Gnmi.Update> getSubtree(DeviceId deviceId, Gnmi.Path path) {
+        final DeviceCache device = devices.get(checkNotNull(deviceId));
+        final List<Gnmi.Update> updates = Lists.newArrayList();
+        if (device != null) {
+            final long now = System.nanoTime();
+            final String key = pathKey(checkNotNull(path));
+            for (Map.Entry<String, Entry> entry : subtree(device.values, key).entrySet()) {
+                if (isBelow(entry.getKey(), key) && !device.expireIfStale(entry.getKey(), entry.getValue(), now)) {
+                    updates.add(entry.getValue().update);
+                }
+            }
+        }
+        if (updates.isEmpty()) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return updates;
+    }
+
+    /**
+     * Tells whether the device has sent all the values of its subscription
+     * at least once.
+     *
+     * @param deviceId device ID
+     * @return true after the first {@code syncResponse} of the device
+     */
+    public boolean isSynced(DeviceId deviceId) {
+        final DeviceCache device = devices.get(checkNotNull(deviceId));
+        return device != null && device.synced;
+    }
+
+    /**
+     * Forgets all the values of a device, e.g. when it is removed.
+     *
+     * @param deviceId device ID
+     */
+    public void invalidate(DeviceId deviceId) {
+        final DeviceCache device = devices.remove(checkNotNull(deviceId));
+        if (device != null) {
+            device.removeSubtree("");
+        }
+    }
+
+    /**
+     * Removes the entries older than the time to live.
+     *
+     * @return number of entries removed
+     */
+    public int evictExpired() {
+        if (ttlNanos == 0) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        int evicted = 0;
+        for (DeviceCache device : devices.values()) {
+            for (Map.Entry<String, Entry> entry : device.values.entrySet()) {
+                if (device.expireIfStale(entry.getKey(), entry.getValue(), now)) {
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Number of cached paths of all devices.
+     *
+     * @return entries
+     */
+    public long size() {
+        long size = 0;
+        for (DeviceCache device : devices.values()) {
+            size += device.values.size();
+        }
+        return size;
+    }
+
+    /**
+     * Estimated memory held by the cached values.
+     *
+     * @return bytes
+     */
+    public long memoryBytes() {
+        return bytes.get();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of new paths not cached because the memory budget was reached.
+     *
+     * @return rejected paths
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "GnmiTelemetryCache{devices=" + devices.size() + ", size=" + size() + ", memoryBytes=" + memoryBytes()
+            + ", hits=" + hits() + ", misses=" + misses() + ", rejected=" + rejected() + '}';
+    }
+
+    /**
+     * Canonical string of the elements of a path, with the keys of each
+     * element sorted, e.g. {@code /interfaces/interface[name=eth0]/state}.
+     */
+    static String pathKey(Gnmi.Path path) {
+        if (path.getElemCount() == 0) {
+            return "";
+        }
+        final StringBuilder key = new StringBuilder();
+        for (Gnmi.PathElem elem : path.getElemList()) {
+            key.append('/').append(elem.getName());
+            if (elem.getKeyCount() == 1) {
+                final Map.Entry<String, String> only = elem.getKeyMap().entrySet().iterator().next();
+                key.append('[').append(only.getKey()).append('=').append(only.getValue()).append(']');
+            } else if (elem.getKeyCount() > 1) {
+                for (Map.Entry<String, String> entry : new TreeMap<>(elem.getKeyMap()).entrySet()) {
+                    key.append('[').append(entry.getKey()).append('=').append(entry.getValue()).append(']');
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private static ConcurrentNavigableMap<String, Entry> subtree(ConcurrentSkipListMap<String, Entry> values,
+                                                                 String key) {
+        return key.isEmpty() ? values : values.subMap(key, true, key + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Tells whether a key is the given path or below it: the next character
+     * starts a new element or the keys of a list entry.
+     */
+    static boolean isBelow(String candidate, String key) {
+        if (candidate.length() == key.length()) {
+            return true;
+        }
+        final char next = candidate.charAt(key.length());
+        return next == '/' || next == '[';
+    }
+
+    private static long estimateBytes(String key, Entry entry) {
+        return ENTRY_OVERHEAD + 2L * key.length() + entry.update.getSerializedSize();
+    }
+
+    /**
+     * Cached value of a path.
+     */
+    private static final class Entry {
+
+        private final Gnmi.Update update;
+        private final long receivedNanos;
+        // Subscription and RPC which sent the value.
+        private final long streamId;
+        private final long rpcId;
+
+        Entry(Gnmi.Update update, long receivedNanos, long streamId, long rpcId) {
+            this.update = update;
+            this.receivedNanos = receivedNanos;
+            this.streamId = streamId;
+            this.rpcId = rpcId;
+        }
+    }
+
+    /**
+     * Latest RPC of a subscription of a device.
+     */
+    private static final class Stream {
+
+        private long rpcId;
+        private boolean synced;
+    }
+
+    /**
+     * Values of one device.
+     */
+    private final class DeviceCache {
+
+        private final ConcurrentSkipListMap<String, Entry> values = new ConcurrentSkipListMap<>();
+        // Used by the delivery of the device only.
+        private final Map<Long, Stream> streams = Maps.newHashMap();
+        private volatile boolean synced;
+
+        /**
+         * Tells whether to apply an update, and notes the RPC which sent it.
+         * Values of a replaced RPC are kept until the RPC replacing it is in
+         * sync, and ignored once it is.
+         */
+        boolean accept(long streamId, long rpcId) {
+            final Stream stream = streams.computeIfAbsent(streamId, id -> new Stream());
+            if (rpcId > stream.rpcId) {
+                stream.rpcId = rpcId;
+                stream.synced = false;
+                return true;
+            }
+            return rpcId == stream.rpcId || !stream.synced;
+        }
+
+        void put(String key, Entry entry) {
+            final Entry current = values.get(key);
+            if (current != null && current.streamId == entry.streamId && current.rpcId > entry.rpcId) {
+                // Already sent by the RPC replacing the one of the entry.
+                return;
+            }
+            final long size = estimateBytes(key, entry);
+            if (maxBytes > 0 && bytes.get() + size > maxBytes && !values.containsKey(key)) {
+                rejected.increment();
+                return;
+            }
+            // The entry replaced, not the one read before: a reader may have expired it meanwhile.
+            final Entry previous = values.put(key, entry);
+            bytes.addAndGet(previous == null ? size : size - estimateBytes(key, previous));
+        }
+
+        Entry get(String key, long now) {
+            final Entry entry = values.get(key);
+            return entry == null || expireIfStale(key, entry, now) ? null : entry;
+        }
+
+        boolean expireIfStale(String key, Entry entry, long now) {
+            if (ttlNanos == 0 || now - entry.receivedNanos < ttlNanos) {
+                return false;
+            }
+            if (values.remove(key, entry)) {
+                bytes.addAndGet(-estimateBytes(key, entry));
+            }
+            return true;
+        }
+
+        void removeSubtree(String key) {
+            final Iterator<Map.Entry<String, Entry>> it = subtree(values, key).entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, Entry> entry = it.next();
+                if (isBelow(entry.getKey(), key) && values.remove(entry.getKey(), entry.getValue())) {
+                    bytes.addAndGet(-estimateBytes(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        /**
+         * Drops the values which earlier RPCs of the subscription sent and the
+         * RPC now in sync did not send again.
+         */
+        void sync(long streamId, long rpcId) {
+            final Stream stream = streams.get(streamId);
+            if (rpcId == stream.rpcId && !stream.synced) {
+                stream.synced = true;
+                for (Map.Entry<String, Entry> entry : values.entrySet()) {
+                    final Entry value = entry.getValue();
+                    if (value.streamId == streamId && value.rpcId < rpcId
+                        && values.remove(entry.getKey(), value)) {
+                        bytes.addAndGet(-estimateBytes(entry.getKey(), value));
+                    }
+                }
+            }
+            synced = true;
+        }
+    }
+
+    /**
+     * Builder of {@link GnmiTelemetryCache}.
+     */
+    public static final class Builder {
+
+        private long ttlNanos;
+        private long maxBytes;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets how long a value stays valid after it is received, no limit by
+         * default. Devices sending ON_CHANGE updates do not resend unchanged
+         * values, so a time to live only suits SAMPLE subscriptions. Neither
+         * does the change detection of the controller, unless enabled with a
+         * refresh interval shorter than the time to live, see
+         * {@link GnmiClientControllerImpl#setChangeDetection(long, TimeUnit)}.
+         *
+         * @param ttl  time to live
+         * @param unit unit of the time to live
+         * @return this builder
+         */
+        public Builder ttl(long ttl, TimeUnit unit) {
+            checkArgument(ttl > 0, "ttl must be positive");
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * Sets the estimated memory above which new paths are not cached, no
+         * limit by default.
+         *
+         * @param maxBytes memory budget in bytes
+         * @return this builder
+         */
+        public Builder maxBytes(long maxBytes) {
+            checkArgument(maxBytes > 0, "maxBytes must be positive");
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public GnmiTelemetryCache build() {
+            return new GnmiTelemetryCache(this);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.yinzhouzhou.sdn.grpc.example.ctl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.example.api.GnmiUpdate;
+import com.github.yinzhouzhou.sdn.grpc.gnmi.protobuff.messages.Gnmi;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+
+/**
+ * Cold publisher of the updates of a Subscribe request: each subscriber gets
+ * its own Subscribe RPC, started when it subscribes and cancelled when it
+ * cancels, so subscribers never affect each other.
+ *
+ * <p>The demand of the subscriber is the gRPC flow control of its RPC: no
+ * message is read from the device until requested, and the HTTP/2 window
+ * makes the device wait meanwhile. The subscriber completes when the device
+ * completes the RPC, e.g. after a ONCE subscription, and gets the error of a
+ * failed RPC; nothing is restarted, unlike {@link GnmiSubscriptionManager}.
+ * Updates are signalled on the gRPC threads, without going through the
+ * controller or its change detection.
+ */
+final class GnmiUpdatePublisher implements Publisher<GnmiUpdate> {
+
+    private static final Logger LOG = getLogger(GnmiUpdatePublisher.class);
+
+    private final GnmiClientImpl client;
+    private final DeviceId deviceId;
+    private final Gnmi.SubscribeRequest request;
+
+    GnmiUpdatePublisher(GnmiClientImpl client, DeviceId deviceId, Gnmi.SubscribeRequest request) {
+        this.client = client;
+        this.deviceId = deviceId;
+        this.request = checkNotNull(request);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super GnmiUpdate> subscriber) {
+        final RpcSubscription subscription = new RpcSubscription(checkNotNull(subscriber));
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    /**
+     * Subscribe RPC of one subscriber.
+     */
+    private final class RpcSubscription
+        implements Subscription, ClientResponseObserver<Gnmi.SubscribeRequest, Gnmi.SubscribeResponse> {
+
+        private final Subscriber<? super GnmiUpdate> subscriber;
+
+        // Guarded by this.
+        private ClientCallStreamObserver<Gnmi.SubscribeRequest> call;
+        // Demand not handed to gRPC yet, which counts its requests as an int.
+        private long demand;
+        // Handed to gRPC and not received yet.
+        private int granted;
+        // Cancelled, or terminated by the RPC.
+        private boolean done;
+        // Signalled instead of the error of the RPC, once cancelled for it.
+        private Throwable failure;
+
+        RpcSubscription(Subscriber<? super GnmiUpdate> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            RuntimeException failure = null;
+            synchronized (this) {
+                if (done) {
+                    // Cancelled from onSubscribe.
+                    return;
+                }
+                try {
+                    client.execRpcNoTimeout(s -> call =
+                        (ClientCallStreamObserver<Gnmi.SubscribeRequest>) s.subscribe(this));
+                    call.onNext(request);
+                    // Demand requested from onSubscribe.
+                    grant();
+                } catch (RuntimeException e) {
+                    failure = e;
+                    cancelCall("Failed to start");
+                }
+            }
+            if (failure != null) {
+                LOG.warn("Unable to start Subscribe RPC for {}", deviceId, failure);
+                signalError(failure);
+            }
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Gnmi.SubscribeRequest> requestStream) {
+            requestStream.disableAutoRequestWithInitial(0);
+        }
+
+        @Override
+        public void request(long count) {
+            final Throwable invalid;
+            synchronized (this) {
+                if (done || failure != null) {
+                    return;
+                }
+                if (count > 0) {
+                    demand = demand + count < 0 ? Long.MAX_VALUE : demand + count;
+                    if (call != null) {
+                        grant();
+                    }
+                    return;
+                }
+                invalid = new IllegalArgumentException("Requested " + count + " updates, must be positive");
+                if (call != null) {
+                    // Signalled by onError, after any onNext running on the gRPC thread.
+                    failure = invalid;
+                    call.cancel("Invalid demand", null);
+                    return;
+                }
+                // From onSubscribe, before the RPC starts.
+                done = true;
+            }
+            signalError(invalid);
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (!done) {
+                    cancelCall("Cancelled by subscriber");
+                }
+            }
+        }
+
+        private void cancelCall(String message) {
+            done = true;
+            if (call != null) {
+                call.cancel(message, null);
+            }
+        }
+
+        private void grant() {
+            final int credits = (int) Math.min(demand, Integer.MAX_VALUE - granted);
+            if (credits > 0) {
+                demand -= credits;
+                granted += credits;
+                call.request(credits);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("IllegalCatch")
+        public void onNext(Gnmi.SubscribeResponse message) {
+            synchronized (this) {
+                if (done || failure != null) {
+                    return;
+                }
+                granted--;
+                grant();
+            }
+            try {
+                subscriber.onNext(new GnmiUpdate(deviceId, message.getUpdate(), message.getSyncResponse()));
+            } catch (Throwable e) {
+                LOG.error("Exception in subscriber of {}, cancelling its Subscribe RPC", deviceId, e);
+                cancel();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            signalError(failure != null ? failure : throwable);
+        }
+
+        @Override
+        @SuppressWarnings("IllegalCatch")
+        public void onCompleted() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            if (failure != null) {
+                signalError(failure);
+                return;
+            }
+            try {
+                subscriber.onComplete();
+            } catch (Throwable e) {
+                LOG.error("Exception in subscriber of {}", deviceId, e);
+            }
+        }
+
+        @SuppressWarnings("IllegalCatch")
+        private void signalError(Throwable throwable) {
+            try {
+                subscriber.onError(throwable);
+            } catch (Throwable e) {
+                LOG.error("Exception in subscriber of {}", deviceId, e);
+            }
+        }
+    }
+}
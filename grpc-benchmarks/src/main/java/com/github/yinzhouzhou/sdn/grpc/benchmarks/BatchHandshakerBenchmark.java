@@ -0,0 +1,122 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.benchmarks.GrpcClientControllerBenchmark.BenchClientController;
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcChannelController;
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcClient;
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcClientController;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.MastershipRole;
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.GrpcChannelControllerImpl;
+import com.github.yinzhouzhou.sdn.grpc.client.util.AbstractGrpcHandshaker;
+import com.github.yinzhouzhou.sdn.grpc.client.util.BatchHandshakerService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup time of a fleet: connects {@code deviceCount} devices through
+ * {@link BatchHandshakerService} with increasing concurrency, concurrency 1
+ * being the former serial loop. Channels are created but never connected, the
+ * devices do not exist.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchHandshakerBenchmark {
+
+    @Param({"1000"})
+    public int deviceCount;
+
+    @Param({"1", "4", "16"})
+    public int concurrency;
+
+    private GrpcChannelControllerImpl channelController;
+    private BenchClientController clientController;
+    private ExecutorService executor;
+    private BatchHandshakerService service;
+    private List<DeviceId> deviceIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        channelController = new GrpcChannelControllerImpl();
+        channelController.activate();
+        clientController = new BenchClientController();
+        clientController.init();
+        executor = Executors.newFixedThreadPool(concurrency);
+        service = new BatchHandshakerService(
+            deviceId -> new BenchHandshaker(channelController, clientController, deviceId),
+            executor, concurrency);
+        deviceIds = new ArrayList<>(deviceCount);
+        for (int i = 0; i < deviceCount; i++) {
+            deviceIds.add(DeviceId.deviceId("grpc://10.1." + (i / 250) + "." + (i % 250) + ":50051"));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void disconnect() {
+        service.disconnectAll(deviceIds).completion().join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        clientController.close();
+        channelController.deactivate();
+    }
+
+    @Benchmark
+    public BatchHandshakerService.Report connectAll() {
+        return service.connectAll(deviceIds).completion().join();
+    }
+
+    /**
+     * Handshaker with only the connect behaviour.
+     */
+    static final class BenchHandshaker
+        extends AbstractGrpcHandshaker<GrpcClient, GrpcClientController<GrpcClient>> {
+
+        BenchHandshaker(GrpcChannelController channelController,
+                        GrpcClientController clientController, DeviceId deviceId) {
+            super(channelController, clientController, deviceId);
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> probeAvailability() {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public void roleChanged(MastershipRole newRole) {
+            // Not supported.
+        }
+
+        @Override
+        public MastershipRole getRole() {
+            return MastershipRole.NONE;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.AbstractGrpcClient;
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.AbstractGrpcClientController;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many concurrent unary calls through an {@link AbstractGrpcClient}, against
+ * an in-process echo server answering each call after a fixed latency, so that
+ * all the calls of an operation are in flight at once.
+ *
+ * <p>{@code future} issues them asynchronously and joins the futures, the way
+ * the clients of this repository work. {@code virtual-threads} runs each call
+ * on its own virtual thread, blocking in
+ * {@link AbstractGrpcClient#callBlocking}; virtual threads need Java 21, and
+ * the mode fails on older runtimes, as the executor is looked up reflectively.
+ * {@code platform-pool} runs the blocking calls on a bounded pool of platform
+ * threads, which caps the calls in flight at the pool size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingClientBenchmark {
+
+    private static final int PLATFORM_POOL_THREADS = 1000;
+    private static final long CALL_TIMEOUT_SECONDS = 60;
+
+    @Param({"future", "virtual-threads", "platform-pool"})
+    public String mode;
+
+    @Param({"100000"})
+    public int calls;
+
+    @Param({"10"})
+    public int latencyMillis;
+
+    private ScheduledExecutorService serverTimer;
+    private Server server;
+    private ManagedChannel channel;
+    private EchoClientController controller;
+    private EchoClient client;
+    private ExecutorService callers;
+    private BytesValue payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final String name = "blocking-client-benchmark-" + System.nanoTime();
+        serverTimer = Executors.newSingleThreadScheduledExecutor();
+        server = InProcessServerBuilder.forName(name)
+            .addService(delayedEcho())
+            .build()
+            .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        controller = new EchoClientController();
+        final DeviceId deviceId = DeviceId.deviceId("grpc://127.0.0.1:50051");
+        controller.create(deviceId, channel);
+        client = controller.get(deviceId);
+        payload = EchoService.payload(64);
+        if ("virtual-threads".equals(mode)) {
+            callers = newVirtualThreadPerTaskExecutor();
+        } else if ("platform-pool".equals(mode)) {
+            callers = Executors.newFixedThreadPool(PLATFORM_POOL_THREADS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if (callers != null) {
+            callers.shutdownNow();
+        }
+        controller.close();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        serverTimer.shutdownNow();
+    }
+
+    @Benchmark
+    public int inFlight() throws InterruptedException {
+        if (callers == null) {
+            final CompletableFuture<?>[] futures = new CompletableFuture<?>[calls];
+            for (int i = 0; i < calls; i++) {
+                futures[i] = client.echo(payload);
+            }
+            CompletableFuture.allOf(futures).join();
+            return futures.length;
+        }
+        final CountDownLatch done = new CountDownLatch(calls);
+        final AtomicInteger answered = new AtomicInteger();
+        for (int i = 0; i < calls; i++) {
+            callers.execute(() -> {
+                try {
+                    if (client.echoBlocking(payload) != null) {
+                        answered.incrementAndGet();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return answered.get();
+    }
+
+    private ServerServiceDefinition delayedEcho() {
+        return ServerServiceDefinition.builder(EchoService.SERVICE_NAME)
+            .addMethod(EchoService.UNARY_ECHO, ServerCalls.asyncUnaryCall(
+                (request, responseObserver) -> serverTimer.schedule(() -> {
+                    responseObserver.onNext(request);
+                    responseObserver.onCompleted();
+                }, latencyMillis, TimeUnit.MILLISECONDS)))
+            .build();
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running "
+                + System.getProperty("java.version"), e);
+        }
+    }
+
+    /**
+     * Client of the echo service, with the future-based and the blocking call.
+     */
+    static final class EchoClient extends AbstractGrpcClient {
+
+        private final EchoService.BlockingStub blockingStub = EchoService.newBlockingStub(channel);
+
+        EchoClient(DeviceId deviceId, ManagedChannel channel, EchoClientController controller) {
+            super(deviceId, channel, false, controller);
+        }
+
+        CompletableFuture<BytesValue> echo(BytesValue request) {
+            final CompletableFuture<BytesValue> future = new CompletableFuture<>();
+            runInCancellableContext(() -> ClientCalls.asyncUnaryCall(
+                channel.newCall(EchoService.UNARY_ECHO,
+                    CallOptions.DEFAULT.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)),
+                request, new StreamObserver<BytesValue>() {
+                    @Override
+                    public void onNext(BytesValue value) {
+                        future.complete(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        future.completeExceptionally(throwable);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        // Ignore. Unary call.
+                    }
+                }));
+            return future;
+        }
+
+        BytesValue echoBlocking(BytesValue request) {
+            return callBlocking(blockingStub, CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS, s -> s.unaryEcho(request));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> probeService() {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+
+    /**
+     * Controller creating the echo clients.
+     */
+    static final class EchoClientController extends AbstractGrpcClientController<EchoClient, Object> {
+
+        EchoClientController() {
+            super("echo");
+        }
+
+        @Override
+        protected EchoClient createClientInstance(DeviceId deviceId, ManagedChannel channel) {
+            return new EchoClient(deviceId, channel, this);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.DefaultGRpcClient;
+import com.github.yinzhouzhou.sdn.grpc.server.DefaultGRpcServer;
+import com.github.yinzhouzhou.sdn.grpc.server.GrpcMessageHandler;
+import com.github.yinzhouzhou.sdn.grpc.server.ServerExecutorMode;
+import com.github.yinzhouzhou.sdn.grpc.utils.json.ContentNegotiation;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
+import io.grpc.stub.ClientCalls;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Unary RPCs against a {@link DefaultGRpcServer} with content negotiation:
+ * {@code plain} is a server without negotiation, {@code proto} and
+ * {@code json} are calls negotiating each encoding with the same handler.
+ *
+ * <p>{@code BOUNDED} runs the handlers behind the executor dispatch
+ * interceptor, and the large payload spans several HTTP/2 frames: together
+ * they check that negotiated requests are still readable once dispatched.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentNegotiationBenchmark {
+
+    // Fails a call whose request the server could not read, instead of hanging.
+    private static final long CALL_TIMEOUT_SECONDS = 10;
+
+    @Param({"plain", "proto", "json"})
+    public String subtype;
+
+    @Param({"DEFAULT", "BOUNDED"})
+    public ServerExecutorMode executorMode;
+
+    @Param({"64", "200000"})
+    public int payloadSize;
+
+    private DefaultGRpcServer server;
+    private DefaultGRpcClient client;
+    private Channel channel;
+    private BytesValue payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        payload = EchoService.payload(payloadSize);
+        final int port = RpcBenchmark.freePort();
+        server = new DefaultGRpcServer("127.0.0.1", port);
+        server.setExecutorMode(executorMode);
+        server.setContentNegotiation(!"plain".equals(subtype));
+        server.buildGRPCServerUsePlainText(
+            Collections.<String, GrpcMessageHandler>singletonMap("echo", new EchoService()),
+            Collections.emptyList());
+        server.initialize();
+        server.start();
+        client = new DefaultGRpcClient("127.0.0.1", port);
+        client.openPlainTextChannel();
+        channel = "json".equals(subtype)
+            ? ClientInterceptors.intercept(client.getChannel(), ContentNegotiation.jsonClientInterceptor())
+            : client.getChannel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.shutdown();
+        server.stopGrpcServer();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BytesValue unary() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.UNARY_ECHO,
+            CallOptions.DEFAULT.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS), payload);
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.server.GrpcMessageHandler;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.AbstractBlockingStub;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Echo service used as the server side of the RPC benchmarks. It is defined by
+ * hand on top of {@link BytesValue} so the benchmarks do not need protoc.
+ */
+public final class EchoService implements GrpcMessageHandler {
+
+    public static final String SERVICE_NAME = "grpc.benchmarks.Echo";
+
+    public static final MethodDescriptor<BytesValue, BytesValue> UNARY_ECHO =
+        MethodDescriptor.<BytesValue, BytesValue>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "UnaryEcho"))
+            .setRequestMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+            .setResponseMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+            .build();
+
+    public static final MethodDescriptor<BytesValue, BytesValue> STREAMING_ECHO =
+        MethodDescriptor.<BytesValue, BytesValue>newBuilder()
+            .setType(MethodDescriptor.MethodType.BIDI_STREAMING)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "StreamingEcho"))
+            .setRequestMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+            .setResponseMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+            .build();
+
+    /**
+     * Builds a request carrying {@code size} bytes of payload.
+     *
+     * @param size payload size in bytes
+     * @return echo request
+     */
+    public static BytesValue payload(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        return BytesValue.newBuilder().setValue(ByteString.copyFrom(bytes)).build();
+    }
+
+    /**
+     * Creates a blocking stub, as protoc would generate it.
+     *
+     * @param channel channel to the echo service
+     * @return blocking stub
+     */
+    public static BlockingStub newBlockingStub(Channel channel) {
+        return new BlockingStub(channel, CallOptions.DEFAULT);
+    }
+
+    @Override
+    public String messageKey() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public ServerServiceDefinition bindService() {
+        return ServerServiceDefinition.builder(SERVICE_NAME)
+            .addMethod(UNARY_ECHO, ServerCalls.asyncUnaryCall(
+                (request, responseObserver) -> {
+                    responseObserver.onNext(request);
+                    responseObserver.onCompleted();
+                }))
+            .addMethod(STREAMING_ECHO, ServerCalls.asyncBidiStreamingCall(
+                responseObserver -> new StreamObserver<BytesValue>() {
+                    @Override
+                    public void onNext(BytesValue value) {
+                        responseObserver.onNext(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        // Client went away, nothing to clean up.
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        responseObserver.onCompleted();
+                    }
+                }))
+            .build();
+    }
+
+    /**
+     * Blocking stub of the unary echo.
+     */
+    public static final class BlockingStub extends AbstractBlockingStub<BlockingStub> {
+
+        private BlockingStub(Channel channel, CallOptions callOptions) {
+            super(channel, callOptions);
+        }
+
+        @Override
+        protected BlockingStub build(Channel channel, CallOptions callOptions) {
+            return new BlockingStub(channel, callOptions);
+        }
+
+        public BytesValue unaryEcho(BytesValue request) {
+            return ClientCalls.blockingUnaryCall(getChannel(), UNARY_ECHO, getCallOptions(), request);
+        }
+    }
+}
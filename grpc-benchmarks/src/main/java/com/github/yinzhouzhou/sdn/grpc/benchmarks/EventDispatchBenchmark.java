@@ -0,0 +1,97 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcClient;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.AbstractGrpcClientController;
+import io.grpc.ManagedChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Events posted to {@link AbstractGrpcClientController#postEvent(DeviceId, Object)}
+ * by a few streaming devices, until the listener has seen all of them.
+ *
+ * <p>{@code maxBatchSize = 1} is one listener call, and one executor task,
+ * per event; larger batches show the gain of handing the listener the events
+ * queued for a device in one call. The score is events per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventDispatchBenchmark {
+
+    private static final int EVENTS = 16384;
+
+    @Param({"1", "1024"})
+    public int maxBatchSize;
+
+    @Param({"16"})
+    public int deviceCount;
+
+    private EventController controller;
+    private DeviceId[] deviceIds;
+    private final AtomicLong delivered = new AtomicLong();
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        controller = new EventController(maxBatchSize);
+        controller.init();
+        controller.addEventListener((deviceId, events) -> delivered.addAndGet(events.size()));
+        deviceIds = new DeviceId[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            deviceIds[i] = DeviceId.deviceId("grpc://10.0.0." + i + ":50051");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        controller.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void postAndDeliver() {
+        for (int i = 0; i < EVENTS; i++) {
+            controller.postEvent(deviceIds[i % deviceIds.length], i);
+        }
+        expected += EVENTS;
+        while (delivered.get() < expected) {
+            LockSupport.parkNanos(1000);
+        }
+    }
+
+    /**
+     * Controller without clients, only here to deliver events.
+     */
+    static final class EventController extends AbstractGrpcClientController<GrpcClient, Integer> {
+
+        EventController(int maxBatchSize) {
+            // A short delay, so that the partial batches left at the end of a burst do not dominate.
+            super("benchmark", 2, maxBatchSize, 100, TimeUnit.MICROSECONDS);
+        }
+
+        @Override
+        protected GrpcClient createClientInstance(DeviceId deviceId, ManagedChannel channel) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.GrpcChannelControllerImpl;
+import io.grpc.ManagedChannel;
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Registry operations of {@link GrpcChannelControllerImpl}. Channels are never
+ * connected, so create/destroy measures the controller bookkeeping plus the
+ * cost of building and shutting down an idle Netty channel.
+ * {@code createAndDestroyAsync} leaves the shutdown to the controller reaper
+ * and only measures the time the caller is blocked.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrpcChannelControllerBenchmark {
+
+    @Param({"1000"})
+    public int channelCount;
+
+    private final AtomicLong uriGenerator = new AtomicLong();
+
+    private GrpcChannelControllerImpl controller;
+    private URI[] uris;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        controller = new GrpcChannelControllerImpl();
+        controller.activate();
+        uris = new URI[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            uris[i] = URI.create("grpc://127.0.0.1:50051/existing-" + i);
+            controller.create(uris[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        controller.deactivate();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<ManagedChannel> get() {
+        return controller.get(uris[ThreadLocalRandom.current().nextInt(uris.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void createAndDestroy() {
+        final URI uri = URI.create("grpc://127.0.0.1:50051/churn-" + uriGenerator.getAndIncrement());
+        controller.create(uri);
+        controller.destroy(uri);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CompletableFuture<Void> createAndDestroyAsync() {
+        final URI uri = URI.create("grpc://127.0.0.1:50051/churn-" + uriGenerator.getAndIncrement());
+        controller.create(uri);
+        return controller.destroyAsync(uri);
+    }
+}
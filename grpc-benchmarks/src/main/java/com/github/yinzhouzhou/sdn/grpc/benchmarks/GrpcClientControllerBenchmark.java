@@ -0,0 +1,160 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcClient;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.AbstractGrpcClientController;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link AbstractGrpcClientController#get(DeviceId)} under contention, i.e.
+ * every benchmark thread looks up random devices of a large fleet.
+ *
+ * <p>Read scaling is the ratio between {@code getContended} (one thread per
+ * core) and {@code getSingleThread}; with a wait-free read path it should grow
+ * with the core count. {@code readWhileChurn} keeps a writer creating and
+ * removing clients while the readers run, to show that connects and
+ * disconnects of other devices do not stall lookups.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrpcClientControllerBenchmark {
+
+    @Param({"5000"})
+    public int deviceCount;
+
+    private BenchClientController controller;
+    private ManagedChannel channel;
+    private DeviceId[] deviceIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        channel = InProcessChannelBuilder.forName("client-controller-benchmark").build();
+        controller = new BenchClientController();
+        controller.init();
+        deviceIds = new DeviceId[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            deviceIds[i] = DeviceId.deviceId("grpc://10.0." + (i / 250) + "." + (i % 250) + ":50051");
+            controller.create(deviceIds[i], channel);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        controller.close();
+        channel.shutdownNow();
+    }
+
+    @Benchmark
+    public GrpcClient getSingleThread() {
+        return controller.get(randomDevice());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public GrpcClient getContended() {
+        return controller.get(randomDevice());
+    }
+
+    @Benchmark
+    @Group("readWhileChurn")
+    @GroupThreads(3)
+    public GrpcClient readWhileChurnGet() {
+        return controller.get(randomDevice());
+    }
+
+    @Benchmark
+    @Group("readWhileChurn")
+    @GroupThreads(1)
+    public void readWhileChurnCreateRemove(ChurnState churn) {
+        final DeviceId deviceId = churn.next();
+        controller.create(deviceId, channel);
+        controller.remove(deviceId);
+    }
+
+    DeviceId randomDevice() {
+        return deviceIds[ThreadLocalRandom.current().nextInt(deviceIds.length)];
+    }
+
+    /**
+     * Devices created and removed by the churn thread, disjoint from the fleet.
+     */
+    @State(Scope.Thread)
+    public static class ChurnState {
+
+        private DeviceId[] churnIds;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            churnIds = new DeviceId[1024];
+            for (int i = 0; i < churnIds.length; i++) {
+                churnIds[i] = DeviceId.deviceId("grpc://172.16." + (i / 250) + "." + (i % 250) + ":50051");
+            }
+        }
+
+        DeviceId next() {
+            next = (next + 1) % churnIds.length;
+            return churnIds[next];
+        }
+    }
+
+    /**
+     * Client controller creating clients which do nothing.
+     */
+    static final class BenchClientController extends AbstractGrpcClientController<GrpcClient, Object> {
+
+        BenchClientController() {
+            super("benchmark");
+        }
+
+        @Override
+        protected GrpcClient createClientInstance(DeviceId deviceId, ManagedChannel channel) {
+            return new NoopClient();
+        }
+    }
+
+    /**
+     * Client without any RPC, only here to populate the controller.
+     */
+    static final class NoopClient implements GrpcClient {
+
+        @Override
+        public void shutdown() {
+            // Nothing to release.
+        }
+
+        @Override
+        public boolean isServerReachable() {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> probeService() {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+}
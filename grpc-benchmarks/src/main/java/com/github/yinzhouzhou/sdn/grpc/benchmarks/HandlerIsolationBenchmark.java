@@ -0,0 +1,144 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.DefaultGRpcClient;
+import com.github.yinzhouzhou.sdn.grpc.server.DefaultGRpcServer;
+import com.github.yinzhouzhou.sdn.grpc.server.GrpcMessageHandler;
+import com.github.yinzhouzhou.sdn.grpc.server.ServerExecutorMode;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a fast echo handler while a slow handler saturates the server.
+ * Both run on a small bounded pool; with {@code bulkhead} the slow handler gets
+ * a thread pool of its own, so its backlog no longer delays the echo calls.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerIsolationBenchmark {
+
+    private static final String SLOW_SERVICE_NAME = "grpc.benchmarks.Slow";
+
+    private static final MethodDescriptor<BytesValue, BytesValue> SLOW_ECHO =
+        MethodDescriptor.<BytesValue, BytesValue>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(SLOW_SERVICE_NAME, "SlowEcho"))
+            .setRequestMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+            .setResponseMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+            .build();
+
+    @Param({"false", "true"})
+    public boolean bulkhead;
+
+    @Param({"5"})
+    public int slowMillis;
+
+    private DefaultGRpcServer server;
+    private DefaultGRpcClient client;
+    private ManagedChannel channel;
+    private BytesValue payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        payload = EchoService.payload(64);
+        final int port = RpcBenchmark.freePort();
+        final Map<String, GrpcMessageHandler> handlers = new LinkedHashMap<>();
+        handlers.put("echo", new EchoService());
+        handlers.put("slow", new SlowService(slowMillis));
+        server = new DefaultGRpcServer("127.0.0.1", port);
+        server.buildGRPCServerUsePlainText(handlers, Collections.emptyList());
+        server.setExecutorMode(ServerExecutorMode.BOUNDED);
+        server.setThreadPool(4, 10000);
+        if (bulkhead) {
+            server.setHandlerThreadPool(SLOW_SERVICE_NAME, 2, 10000);
+        }
+        server.initialize();
+        server.start();
+        client = new DefaultGRpcClient("127.0.0.1", port);
+        client.openPlainTextChannel();
+        channel = client.getChannel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.shutdown();
+        server.stopGrpcServer();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public BytesValue fast() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.UNARY_ECHO, CallOptions.DEFAULT, payload);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public BytesValue slow() {
+        return ClientCalls.blockingUnaryCall(channel, SLOW_ECHO, CallOptions.DEFAULT, payload);
+    }
+
+    /**
+     * Echo handler blocking its thread for a fixed time, like a handler waiting
+     * on a database or a device.
+     */
+    private static final class SlowService implements GrpcMessageHandler {
+
+        private final int delayMillis;
+
+        SlowService(int delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public String messageKey() {
+            return SLOW_SERVICE_NAME;
+        }
+
+        @Override
+        public ServerServiceDefinition bindService() {
+            return ServerServiceDefinition.builder(SLOW_SERVICE_NAME)
+                .addMethod(SLOW_ECHO, ServerCalls.asyncUnaryCall(
+                    (request, responseObserver) -> {
+                        try {
+                            Thread.sleep(delayMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        responseObserver.onNext(request);
+                        responseObserver.onCompleted();
+                    }))
+                .build();
+        }
+    }
+}
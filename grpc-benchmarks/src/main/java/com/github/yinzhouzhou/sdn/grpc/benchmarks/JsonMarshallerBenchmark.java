@@ -0,0 +1,114 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.utils.json.JsonMarshaller;
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.TimestampProto;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.protobuf.ProtoUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link JsonMarshaller} encode and decode. The messages are descriptor protos
+ * of well-known files, which exercise nested messages, enums, repeated and
+ * optional fields: {@code small} is {@code timestamp.proto} (under 1 KB of
+ * JSON) and {@code large} is {@code descriptor.proto} (about 24 KB of JSON).
+ *
+ * <p>{@code codec} compares the marshaller ({@code json}) with the original one
+ * printing through a {@link String} ({@code legacy}), with the
+ * descriptor-compiled one ({@code compiled}) and with the binary protobuf
+ * marshaller ({@code proto}). Streams are consumed the way gRPC does: drained
+ * into the transport when {@link Drainable}, parsed from {@link KnownLength}
+ * buffers. The {@code proto} round trip is not comparable: the protobuf
+ * marshaller parses its own stream by returning the message it holds.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMarshallerBenchmark {
+
+    @Param({"small", "large"})
+    public String message;
+
+    @Param({"legacy", "json", "compiled", "proto"})
+    public String codec;
+
+    private Marshaller<FileDescriptorProto> marshaller;
+    private FileDescriptorProto value;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        switch (codec) {
+            case "legacy":
+                marshaller = LegacyJsonMarshaller.jsonMarshaller(FileDescriptorProto.getDefaultInstance());
+                break;
+            case "compiled":
+                marshaller = JsonMarshaller.compiledJsonMarshaller(FileDescriptorProto.getDefaultInstance());
+                break;
+            case "proto":
+                marshaller = ProtoUtils.marshaller(FileDescriptorProto.getDefaultInstance());
+                break;
+            default:
+                marshaller = JsonMarshaller.jsonMarshaller(FileDescriptorProto.getDefaultInstance());
+                break;
+        }
+        value = "large".equals(message)
+            ? DescriptorProtos.getDescriptor().toProto()
+            : TimestampProto.getDescriptor().toProto();
+        encoded = ByteStreams.toByteArray(marshaller.stream(value));
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        final InputStream stream = marshaller.stream(value);
+        final OutputStream transport = ByteStreams.nullOutputStream();
+        if (stream instanceof Drainable) {
+            return ((Drainable) stream).drainTo(transport);
+        }
+        return ByteStreams.copy(stream, transport);
+    }
+
+    @Benchmark
+    public FileDescriptorProto parse() {
+        return marshaller.parse(new KnownLengthInputStream(encoded));
+    }
+
+    @Benchmark
+    public FileDescriptorProto roundTrip() {
+        final InputStream stream = marshaller.stream(value);
+        return marshaller.parse(stream);
+    }
+
+    /**
+     * Received message, as handed to the marshaller by gRPC.
+     */
+    private static final class KnownLengthInputStream extends ByteArrayInputStream implements KnownLength {
+
+        KnownLengthInputStream(byte[] bytes) {
+            super(bytes);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.utils.collect.LongLongHashMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Change detection of one sample interval: each leaf of a device, keyed by
+ * the fingerprint of its path, replaces the fingerprint of its value and
+ * compares it with the previous one. {@code boxed} is a
+ * {@code HashMap<Long, Long>}, {@code primitive} a {@link LongLongHashMap}.
+ *
+ * <p>Run with {@code -prof gc}: the boxed map allocates a {@code Long} key
+ * per leaf, the primitive map nothing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LongLongHashMapBenchmark {
+
+    @Param({"100000"})
+    public int leaves;
+
+    @Param({"boxed", "primitive"})
+    public String map;
+
+    private long[] paths;
+    private long[] values;
+    private Map<Long, Long> boxed;
+    private LongLongHashMap primitive;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final SplittableRandom random = new SplittableRandom(42);
+        paths = new long[leaves];
+        values = new long[leaves];
+        boxed = new HashMap<>();
+        primitive = new LongLongHashMap(leaves, 0);
+        for (int i = 0; i < leaves; i++) {
+            paths[i] = random.nextLong();
+            // A few distinct values, most leaves do not change.
+            values[i] = random.nextInt(4) + 1;
+            boxed.put(paths[i], values[i]);
+            primitive.put(paths[i], values[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean replace() {
+        final int leaf = next;
+        next = leaf + 1 == leaves ? 0 : leaf + 1;
+        if ("boxed".equals(map)) {
+            final Long previous = boxed.put(paths[leaf], values[leaf]);
+            return previous != null && previous == values[leaf];
+        }
+        return primitive.put(paths[leaf], values[leaf]) == values[leaf];
+    }
+}
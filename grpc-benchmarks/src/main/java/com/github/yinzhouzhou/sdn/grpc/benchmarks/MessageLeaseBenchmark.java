@@ -0,0 +1,108 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.utils.pool.MessageLease;
+import com.github.yinzhouzhou.sdn.grpc.utils.pool.PooledMarshaller;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Message;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.StreamObserver;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Messages of a stream handed to an observer, parsed by the protobuf
+ * marshaller ({@code proto}) or by a pooled marshaller with leases closed
+ * after {@code onNext} ({@code pooled}). {@code bytes} is a 4 KB
+ * {@code BytesValue}, the shape of a JSON-encoded telemetry value, and
+ * {@code descriptor} is {@code descriptor.proto}, made of strings and nested
+ * messages.
+ *
+ * <p>Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm}, the
+ * bytes allocated per message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageLeaseBenchmark {
+
+    @Param({"bytes", "descriptor"})
+    public String message;
+
+    @Param({"proto", "pooled"})
+    public String codec;
+
+    private byte[] encoded;
+    private Marshaller<Message> protoMarshaller;
+    private Marshaller<MessageLease<Message>> leaseMarshaller;
+    private StreamObserver<Message> observer;
+    private StreamObserver<MessageLease<Message>> leaseObserver;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) {
+        final Message value = "bytes".equals(message)
+            ? EchoService.payload(4096)
+            : DescriptorProtos.getDescriptor().toProto();
+        encoded = value.toByteArray();
+        protoMarshaller = ProtoUtils.marshaller(value.getDefaultInstanceForType());
+        leaseMarshaller = PooledMarshaller.leaseMarshaller(value.getDefaultInstanceForType());
+        observer = new StreamObserver<Message>() {
+            @Override
+            public void onNext(Message received) {
+                blackhole.consume(received);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                blackhole.consume(throwable);
+            }
+
+            @Override
+            public void onCompleted() {
+                // Nothing to do.
+            }
+        };
+        leaseObserver = MessageLease.releasingAfterNext(observer);
+        try (MessageLease<Message> lease = leaseMarshaller.parse(new KnownLengthInputStream(encoded))) {
+            if (!value.equals(lease.get())) {
+                throw new IllegalStateException("Pooled marshaller parsed another message");
+            }
+        }
+    }
+
+    @Benchmark
+    public void onNext() {
+        if ("pooled".equals(codec)) {
+            leaseObserver.onNext(leaseMarshaller.parse(new KnownLengthInputStream(encoded)));
+        } else {
+            observer.onNext(protoMarshaller.parse(new KnownLengthInputStream(encoded)));
+        }
+    }
+
+    /**
+     * Received message, as handed to the marshaller by gRPC.
+     */
+    private static final class KnownLengthInputStream extends ByteArrayInputStream implements KnownLength {
+
+        KnownLengthInputStream(byte[] bytes) {
+            super(bytes);
+        }
+    }
+}
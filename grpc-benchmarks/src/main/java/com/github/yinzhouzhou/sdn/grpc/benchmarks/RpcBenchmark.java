@@ -0,0 +1,156 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.DefaultGRpcClient;
+import com.github.yinzhouzhou.sdn.grpc.server.DefaultGRpcServer;
+import com.github.yinzhouzhou.sdn.grpc.server.GrpcMessageHandler;
+import com.github.yinzhouzhou.sdn.grpc.utils.transport.GrpcTransportResources;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end unary and streaming RPCs between {@link DefaultGRpcServer} and
+ * {@link DefaultGRpcClient} over loopback Netty, with the NIO and the native
+ * epoll transport, and the same echo service over the in-process transport as a
+ * transport-free baseline. {@code netty-epoll} falls back to NIO where epoll is
+ * not available.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RpcBenchmark {
+
+    @Param({"inprocess", "netty-nio", "netty-epoll"})
+    public String transport;
+
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    private GrpcTransportResources transportResources;
+    private DefaultGRpcServer nettyServer;
+    private DefaultGRpcClient nettyClient;
+    private Server inProcessServer;
+    private ManagedChannel channel;
+    private BytesValue payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        payload = EchoService.payload(payloadSize);
+        if (transport.startsWith("netty")) {
+            transportResources = GrpcTransportResources.builder()
+                .nativeTransport("netty-epoll".equals(transport))
+                .threadNamePrefix("rpc-benchmark")
+                .build();
+            final int port = freePort();
+            nettyServer = new DefaultGRpcServer("127.0.0.1", port, transportResources);
+            nettyServer.buildGRPCServerUsePlainText(
+                Collections.<String, GrpcMessageHandler>singletonMap("echo", new EchoService()),
+                Collections.emptyList());
+            nettyServer.initialize();
+            nettyServer.start();
+            nettyClient = new DefaultGRpcClient("127.0.0.1", port, transportResources);
+            nettyClient.openPlainTextChannel();
+            channel = nettyClient.getChannel();
+        } else {
+            final String name = "rpc-benchmark-" + System.nanoTime();
+            inProcessServer = InProcessServerBuilder.forName(name)
+                .addService(new EchoService())
+                .build()
+                .start();
+            channel = InProcessChannelBuilder.forName(name).build();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if (nettyClient != null) {
+            nettyClient.shutdown();
+            nettyServer.stopGrpcServer();
+            transportResources.close();
+        } else {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            inProcessServer.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    public BytesValue unary() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.UNARY_ECHO, CallOptions.DEFAULT, payload);
+    }
+
+    @Benchmark
+    public BytesValue streamingPingPong(StreamState stream) throws InterruptedException {
+        stream.requestObserver.onNext(payload);
+        return stream.responses.take();
+    }
+
+    /**
+     * One long-lived bidi stream per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class StreamState {
+
+        final BlockingQueue<BytesValue> responses = new ArrayBlockingQueue<>(16);
+        StreamObserver<BytesValue> requestObserver;
+
+        @Setup(Level.Trial)
+        public void open(RpcBenchmark benchmark) {
+            requestObserver = ClientCalls.asyncBidiStreamingCall(
+                benchmark.channel.newCall(EchoService.STREAMING_ECHO, CallOptions.DEFAULT),
+                new StreamObserver<BytesValue>() {
+                    @Override
+                    public void onNext(BytesValue value) {
+                        responses.add(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        // Stream torn down at the end of the trial.
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        // Nothing to do.
+                    }
+                });
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            requestObserver.onCompleted();
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
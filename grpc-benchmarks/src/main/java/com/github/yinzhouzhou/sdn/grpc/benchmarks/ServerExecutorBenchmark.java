@@ -0,0 +1,77 @@
+package com.github.yinzhouzhou.sdn.grpc.benchmarks;
+
+import com.github.yinzhouzhou.sdn.grpc.client.DefaultGRpcClient;
+import com.github.yinzhouzhou.sdn.grpc.server.DefaultGRpcServer;
+import com.github.yinzhouzhou.sdn.grpc.server.GrpcMessageHandler;
+import com.github.yinzhouzhou.sdn.grpc.server.ServerExecutorMode;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.ClientCalls;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Unary RPCs against {@link DefaultGRpcServer} in each {@link ServerExecutorMode}:
+ * the gRPC cached pool, the bounded pool behind the dispatching interceptor, and
+ * handlers running on the event loop.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerExecutorBenchmark {
+
+    @Param({"DEFAULT", "BOUNDED", "DIRECT"})
+    public ServerExecutorMode executorMode;
+
+    private DefaultGRpcServer server;
+    private DefaultGRpcClient client;
+    private ManagedChannel channel;
+    private BytesValue payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        payload = EchoService.payload(64);
+        final int port = RpcBenchmark.freePort();
+        server = new DefaultGRpcServer("127.0.0.1", port);
+        server.buildGRPCServerUsePlainText(
+            Collections.<String, GrpcMessageHandler>singletonMap("echo", new EchoService()),
+            Collections.emptyList());
+        server.setExecutorMode(executorMode);
+        server.initialize();
+        server.start();
+        client = new DefaultGRpcClient("127.0.0.1", port);
+        client.openPlainTextChannel();
+        channel = client.getChannel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.shutdown();
+        server.stopGrpcServer();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BytesValue unary() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.UNARY_ECHO, CallOptions.DEFAULT, payload);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+import com.github.yinzhouzhou.sdn.grpc.benchmarks.EchoService;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Unary RPC over the in-process transport through {@link GrpcLoggingInterceptor}
+ * with message logging enabled and disabled, in both log formats. Lives in the
+ * interceptor package because the interceptor is package-private.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrpcLoggingInterceptorBenchmark {
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    @Param({"TEXT", "BINARY"})
+    public GrpcCallLogFormat format;
+
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    private Server server;
+    private ManagedChannel managedChannel;
+    private GrpcLoggingInterceptor interceptor;
+    private Channel channel;
+    private BytesValue payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final String name = "logging-interceptor-benchmark-" + System.nanoTime();
+        server = InProcessServerBuilder.forName(name)
+            .addService(new EchoService())
+            .build()
+            .start();
+        managedChannel = InProcessChannelBuilder.forName(name).build();
+        interceptor = new GrpcLoggingInterceptor(new AtomicBoolean(enabled), new GrpcCallLogWriter(
+            URI.create("grpc://benchmark:50051"), format,
+            GrpcCallCaptureSink.DEFAULT_SEGMENT_SIZE, GrpcCallCaptureSink.DEFAULT_MAX_SEGMENTS));
+        channel = ClientInterceptors.intercept(managedChannel, interceptor);
+        payload = EchoService.payload(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        interceptor.close();
+        managedChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public BytesValue unary() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.UNARY_ECHO, CallOptions.DEFAULT, payload);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BytesValue unaryContended() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.UNARY_ECHO, CallOptions.DEFAULT, payload);
+    }
+}
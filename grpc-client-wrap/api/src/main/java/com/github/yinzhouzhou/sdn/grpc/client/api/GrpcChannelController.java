@@ -6,6 +6,7 @@ import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import java.net.URI;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstraction of a gRPC controller that creates, stores, and manages gRPC
@@ -42,6 +43,9 @@ public interface GrpcChannelController {
      * grpc://10.0.0.1:50001/bar?param=2
      * }</pre>
      * <p>
+     * Implementations may also read channel options from the query, such as
+     * the size of a connection pool to the same server.
+     * <p>
      * When creating secure channels (i.e., {@code grpcs:)}, the current
      * implementation provides encryption but not authentication, any server
      * certificate, even if insecure, will be accepted.
@@ -77,6 +81,17 @@ public interface GrpcChannelController {
      */
     void destroy(URI channelUri);
 
+    /**
+     * Similar to {@link #destroy(URI)} but does not wait for the channel to
+     * terminate. The channel is removed immediately, such that a new channel
+     * with the same URI can be created, and it is shut down in the background.
+     *
+     * @param channelUri URI of the channel to remove
+     * @return future completed when the channel has terminated, or completed
+     *         exceptionally if it does not terminate in time
+     */
+    CompletableFuture<Void> destroyAsync(URI channelUri);
+
     /**
      * If present, returns the channel associated with the given URI.
      *
@@ -1,7 +1,9 @@
 
 package com.github.yinzhouzhou.sdn.grpc.client.api;
 
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceAgentListener;
 import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.ProviderId;
 import com.google.common.annotations.Beta;
 import io.grpc.ManagedChannel;
 
@@ -58,8 +60,8 @@ public interface GrpcClientController<C extends GrpcClient> {
      * @param providerId provider ID
      * @param listener   the device agent listener
      */
-//    void addDeviceAgentListener(DeviceId deviceId, ProviderId providerId,
-//                                DeviceAgentListener listener);
+    void addDeviceAgentListener(DeviceId deviceId, ProviderId providerId,
+                                DeviceAgentListener listener);
 
     /**
      * Removes the listener for device agent events that was previously
@@ -68,5 +70,5 @@ public interface GrpcClientController<C extends GrpcClient> {
      * @param deviceId   device ID
      * @param providerId the provider ID
      */
-//    void removeDeviceAgentListener(DeviceId deviceId, ProviderId providerId);
+    void removeDeviceAgentListener(DeviceId deviceId, ProviderId providerId);
 }
@@ -0,0 +1,29 @@
+package com.github.yinzhouzhou.sdn.grpc.client.api;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.google.common.annotations.Beta;
+import java.util.List;
+
+/**
+ * Listener of the protocol specific events (e.g. gNMI updates) posted by a
+ * gRPC client controller.
+ *
+ * <p>Events are delivered in batches: the events of one device are queued and
+ * handed over together once enough of them are waiting or the oldest one has
+ * waited long enough. The batches of one device are delivered one at a time,
+ * in the order the events were posted; batches of different devices may be
+ * delivered concurrently.
+ *
+ * @param <E> the event type
+ */
+@Beta
+public interface GrpcEventListener<E> {
+
+    /**
+     * Handles a batch of events of one device.
+     *
+     * @param deviceId device the events are about
+     * @param events   unmodifiable, non-empty list of events in posting order
+     */
+    void event(DeviceId deviceId, List<E> events);
+}
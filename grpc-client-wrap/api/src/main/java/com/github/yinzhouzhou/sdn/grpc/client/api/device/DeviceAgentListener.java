@@ -0,0 +1,15 @@
+package com.github.yinzhouzhou.sdn.grpc.client.api.device;
+
+/**
+ * Listener of the events of the protocol agent of a device.
+ */
+public interface DeviceAgentListener {
+
+    /**
+     * Handles an event of the agent. Events of one device are delivered one at
+     * a time and in order, away from the gRPC threads which detected them.
+     *
+     * @param event device agent event
+     */
+    void event(DeviceAgentEvent event);
+}
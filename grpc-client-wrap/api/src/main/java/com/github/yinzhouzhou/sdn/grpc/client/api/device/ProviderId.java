@@ -0,0 +1,67 @@
+package com.github.yinzhouzhou.sdn.grpc.client.api.device;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+
+/**
+ * Immutable identity of a provider, i.e. a component interacting with devices
+ * through a protocol agent, made of a URI scheme and a name.
+ */
+public final class ProviderId {
+
+    private final String scheme;
+    private final String id;
+
+    /**
+     * Creates a provider identifier.
+     *
+     * @param scheme device URI scheme handled by the provider, e.g. grpc
+     * @param id     provider name
+     */
+    public ProviderId(String scheme, String id) {
+        this.scheme = checkNotNull(scheme, "Scheme cannot be null");
+        this.id = checkNotNull(id, "ID cannot be null");
+    }
+
+    /**
+     * Returns the device URI scheme handled by the provider.
+     *
+     * @return URI scheme
+     */
+    public String scheme() {
+        return scheme;
+    }
+
+    /**
+     * Returns the provider name.
+     *
+     * @return provider name
+     */
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(scheme, id);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof ProviderId) {
+            final ProviderId that = (ProviderId) obj;
+            return Objects.equals(this.scheme, that.scheme)
+                && Objects.equals(this.id, that.id);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return scheme + ":" + id;
+    }
+}
@@ -2,6 +2,7 @@
 
 package com.github.yinzhouzhou.sdn.grpc.client.ctl;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -13,11 +14,20 @@ import io.grpc.ConnectivityState;
 import io.grpc.Context;
 import io.grpc.ManagedChannel;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.AbstractBlockingStub;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import org.slf4j.Logger;
 
 /**
  * Abstract client for gRPC service.
+ *
+ * <p>RPCs run in the cancellable context of the client, so that shutting the
+ * client down cancels those still running. Besides the asynchronous stubs,
+ * implementations can offer blocking calls with
+ * {@link #callBlocking(AbstractBlockingStub, long, TimeUnit, Function)}, meant
+ * for callers on virtual threads.
  */
 public abstract class AbstractGrpcClient implements GrpcClient {
 
@@ -98,6 +108,39 @@ public abstract class AbstractGrpcClient implements GrpcClient {
         this.cancellableContext.run(task);
     }
 
+    /**
+     * Executes a blocking RPC in the cancellable context of this client, with
+     * a deadline of its own. The calling thread parks until the response, the
+     * deadline or the shutdown of the client; on a virtual thread, parking
+     * releases the carrier thread, so a call in flight costs no platform thread
+     * and callers can simply block instead of chaining futures.
+     *
+     * @param stub    blocking stub of the channel of this client
+     * @param timeout deadline of the call, from now
+     * @param unit    unit of the timeout
+     * @param call    RPC to run on the stub
+     * @param <S>     the stub type
+     * @param <R>     the response type
+     * @return response
+     * @throws StatusRuntimeException if the RPC fails, with DEADLINE_EXCEEDED
+     *     past the deadline and CANCELLED once the client is shut down
+     * @throws IllegalStateException if context has been cancelled
+     */
+    protected <S extends AbstractBlockingStub<S>, R> R callBlocking(S stub, long timeout, TimeUnit unit,
+                                                                   Function<S, R> call) {
+        checkArgument(timeout > 0, "timeout must be positive");
+        if (this.cancellableContext.isCancelled()) {
+            throw new IllegalStateException(
+                "Context is cancelled (client has been shut down)");
+        }
+        final Context previous = cancellableContext.attach();
+        try {
+            return call.apply(stub.withDeadlineAfter(timeout, unit));
+        } finally {
+            cancellableContext.detach(previous);
+        }
+    }
+
     /**
      * Returns the context associated with this client.
      *
@@ -182,7 +225,7 @@ public abstract class AbstractGrpcClient implements GrpcClient {
             final boolean past = channelOpen.getAndSet(present);
             if (present != past) {
                 log.debug("Notifying event {} for {}", eventType, deviceId);
-                controller.postEvent(new DeviceAgentEvent(eventType, deviceId));
+                controller.postDeviceAgentEvent(new DeviceAgentEvent(eventType, deviceId));
             }
         }
 
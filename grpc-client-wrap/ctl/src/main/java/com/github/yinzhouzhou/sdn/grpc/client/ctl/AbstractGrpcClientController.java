@@ -1,16 +1,26 @@
 package com.github.yinzhouzhou.sdn.grpc.client.ctl;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcClient;
 import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcClientController;
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcEventListener;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceAgentEvent;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceAgentListener;
 import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.ProviderId;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.ManagedChannel;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
@@ -20,26 +30,70 @@ import org.slf4j.Logger;
  * create clients, associate device agent listeners to them and register other
  * event listeners.
  *
+ * <p>Clients are kept in a concurrent map: {@link #get(DeviceId)} is a plain
+ * map read and never blocks, only {@link #create(DeviceId, ManagedChannel)} and
+ * {@link #remove(DeviceId)} take the lock of the device they operate on.
+ *
+ * <p>Events posted with {@link #postEvent(Object)} are queued per device and
+ * delivered to the {@link GrpcEventListener}s in batches, bounded by a maximum
+ * size and a maximum delay, so that a telemetry stream costs one listener call
+ * per batch instead of one per message. {@link DeviceAgentEvent}s go to the
+ * {@link DeviceAgentListener}s registered for their device, one event at a
+ * time and in order per device. Both are delivered on threads of the
+ * controller, never on the thread posting them.
+ *
  * @param <C> the gRPC client type
+ * @param <E> the event type
  */
 public abstract class AbstractGrpcClientController<C extends GrpcClient, E> implements GrpcClientController<C> {
 
     /**
-     * The default max inbound message size (MB).
+     * The number of lock stripes serializing create/remove per device.
      */
     private static final int DEFAULT_DEVICE_LOCK_SIZE = 30;
 
+    private static final int DEFAULT_EVENT_THREADS = 2;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+    private static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 10;
+
     private final Logger log = getLogger(getClass());
 
-    private final Map<DeviceId, C> clients = Maps.newHashMap();
+    private final ConcurrentMap<DeviceId, C> clients = Maps.newConcurrentMap();
 
-//    private final ConcurrentMap<DeviceId, ConcurrentMap<ProviderId, DeviceAgentListener>>
-//            deviceAgentListeners = Maps.newConcurrentMap();
     private final String serviceName;
     private final Striped<Lock> stripedLocks = Striped.lock(DEFAULT_DEVICE_LOCK_SIZE);
+    private final ScheduledThreadPoolExecutor eventExecutor;
+    private final BatchingEventDispatcher<E> eventDispatcher;
+    private final DeviceAgentEventDispatcher deviceAgentEventDispatcher;
 
     public AbstractGrpcClientController(String serviceName) {
+        this(serviceName, DEFAULT_EVENT_THREADS, DEFAULT_MAX_BATCH_SIZE,
+            DEFAULT_MAX_BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a controller with its own event batching settings.
+     *
+     * @param serviceName   name of the service, used in logs and thread names
+     * @param eventThreads  number of threads delivering the events of all devices
+     * @param maxBatchSize  largest number of events delivered in one listener call
+     * @param maxBatchDelay longest time an event waits for its batch to fill up
+     * @param unit          unit of the delay
+     */
+    public AbstractGrpcClientController(String serviceName, int eventThreads, int maxBatchSize,
+                                        long maxBatchDelay, TimeUnit unit) {
+        checkArgument(eventThreads > 0, "eventThreads must be positive");
         this.serviceName = serviceName;
+        // Threads are started by the first delivery, controllers without listeners never start any.
+        this.eventExecutor = new ScheduledThreadPoolExecutor(eventThreads, new ThreadFactoryBuilder()
+            .setNameFormat(serviceName + "EventDispatcher-%d")
+            .setDaemon(true)
+            .setUncaughtExceptionHandler((thread, throwable) -> {
+                log.error("Uncaught exception on {}", thread.getName(), throwable);
+            }).build());
+        this.eventDispatcher = new BatchingEventDispatcher<>(
+            serviceName, eventExecutor, maxBatchSize, maxBatchDelay, checkNotNull(unit));
+        this.deviceAgentEventDispatcher = new DeviceAgentEventDispatcher(eventExecutor);
     }
 
     public void init() {
@@ -48,6 +102,8 @@ public abstract class AbstractGrpcClientController<C extends GrpcClient, E> impl
 
     public void close() {
         clients.clear();
+        // Batches already armed and device agent events already queued are still delivered.
+        eventExecutor.shutdown();
         log.info("Stopped");
     }
 
@@ -91,7 +147,7 @@ public abstract class AbstractGrpcClientController<C extends GrpcClient, E> impl
     @Override
     public C get(DeviceId deviceId) {
         checkNotNull(deviceId);
-        return withDeviceLock(() -> clients.get(deviceId), deviceId);
+        return clients.get(deviceId);
     }
 
     @Override
@@ -103,21 +159,115 @@ public abstract class AbstractGrpcClientController<C extends GrpcClient, E> impl
                 log.debug("Removing {}...", clientName(deviceId));
                 client.shutdown();
             }
+            eventDispatcher.remove(deviceId);
             return null;
         }, deviceId);
     }
 
+    @Override
+    public void addDeviceAgentListener(DeviceId deviceId, ProviderId providerId, DeviceAgentListener listener) {
+        deviceAgentEventDispatcher.addListener(deviceId, providerId, listener);
+    }
+
+    @Override
+    public void removeDeviceAgentListener(DeviceId deviceId, ProviderId providerId) {
+        deviceAgentEventDispatcher.removeListener(deviceId, providerId);
+    }
+
+    /**
+     * Queues an event of a device agent for the listeners of its device.
+     * Events of devices without listeners are dropped.
+     *
+     * @param event device agent event
+     */
+    public void postDeviceAgentEvent(DeviceAgentEvent event) {
+        checkNotNull(event);
+        checkNotNull(event.getDeviceId());
+        deviceAgentEventDispatcher.post(event);
+    }
+
+    /**
+     * Registers a listener of the events posted to this controller.
+     *
+     * @param listener event listener
+     */
+    public void addEventListener(GrpcEventListener<E> listener) {
+        eventDispatcher.addListener(listener);
+    }
+
+    /**
+     * Unregisters a listener; batches being delivered may still reach it.
+     *
+     * @param listener event listener
+     */
+    public void removeEventListener(GrpcEventListener<E> listener) {
+        eventDispatcher.removeListener(listener);
+    }
+
+    /**
+     * Queues an event for the listeners, under the device returned by
+     * {@link #eventDeviceId(Object)}. Events posted while no listener is
+     * registered are dropped.
+     *
+     * @param event event
+     * @throws IllegalStateException if listeners are registered and the
+     *     controller does not tell the device of the event
+     */
     public void postEvent(E event) {
+        checkNotNull(event);
+        if (!eventDispatcher.hasListeners()) {
+            return;
+        }
+        final DeviceId deviceId = eventDeviceId(event);
+        checkState(deviceId != null, "%s controller does not tell the device of %s, "
+            + "post it with postEvent(DeviceId, event)", serviceName, event);
+        eventDispatcher.post(deviceId, event);
+    }
+
+    /**
+     * Queues an event of the given device for the listeners. Events posted
+     * while no listener is registered are dropped.
+     *
+     * @param deviceId device the event is about
+     * @param event    event
+     */
+    public void postEvent(DeviceId deviceId, E event) {
         // We should have only one event delivery mechanism. We have two now
         // because we have two different types of events, DeviceAgentEvent and
         // controller/protocol specific ones (e.g. P4Runtime or gNMI).
         // TODO: extend device agent event to allow delivery of protocol-specific
         //  events, e.g. packet-in
+        checkNotNull(deviceId);
         checkNotNull(event);
-//        if (deviceAgentListeners.containsKey(event.getDeviceId())) {
-//            deviceAgentListeners.get(event.getDeviceId()).values()
-//                    .forEach(l -> l /*l.event(event)*/);
-//        }
+        eventDispatcher.post(deviceId, event);
+    }
+
+    /**
+     * Queues events of the given device for the listeners, and runs a
+     * callback once they are delivered, for sources applying backpressure.
+     * The callback runs right away when no listener is registered.
+     *
+     * @param deviceId    device the events are about
+     * @param events      events
+     * @param onDelivered callback run on the delivery thread
+     */
+    public void postEvents(DeviceId deviceId, List<E> events, Runnable onDelivered) {
+        checkNotNull(deviceId);
+        checkNotNull(events);
+        checkNotNull(onDelivered);
+        eventDispatcher.post(deviceId, events, onDelivered);
+    }
+
+    /**
+     * Returns the device an event is about, which selects the queue that
+     * keeps it ordered. Controllers posting with {@link #postEvent(Object)}
+     * override it; the others post with {@link #postEvent(DeviceId, Object)}.
+     *
+     * @param event event
+     * @return device ID, or null if the event does not tell it
+     */
+    protected DeviceId eventDeviceId(E event) {
+        return null;
     }
 
     private <U> U withDeviceLock(Supplier<U> task, DeviceId deviceId) {
@@ -0,0 +1,248 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcEventListener;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.google.common.collect.Maps;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+
+/**
+ * Delivers the events posted to a controller to its listeners, in batches.
+ *
+ * <p>Each device has its own queue. The first event posted to an idle queue
+ * arms a flush after the maximum batch delay, and a queue reaching the maximum
+ * batch size is flushed right away, so an event waits at most the delay while
+ * a busy device is flushed in full batches. A flush delivers the events queued
+ * when it starts, then gives the thread back: a device streaming faster than
+ * its listeners does not starve the other devices.
+ *
+ * <p>A source can also post events with a callback, run in order with the
+ * batches once its events are delivered, to pace itself on the listeners.
+ *
+ * @param <E> the event type
+ */
+final class BatchingEventDispatcher<E> {
+
+    private final Logger log = getLogger(getClass());
+
+    private final String serviceName;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final ScheduledExecutorService executor;
+    private final List<GrpcEventListener<E>> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<DeviceId, DeviceQueue> queues = Maps.newConcurrentMap();
+
+    BatchingEventDispatcher(String serviceName, ScheduledExecutorService executor, int maxBatchSize,
+                            long maxBatchDelay, TimeUnit unit) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        checkArgument(maxBatchDelay >= 0, "maxBatchDelay must not be negative");
+        this.serviceName = serviceName;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = unit.toNanos(maxBatchDelay);
+        this.executor = checkNotNull(executor);
+    }
+
+    void addListener(GrpcEventListener<E> listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    void removeListener(GrpcEventListener<E> listener) {
+        listeners.remove(listener);
+    }
+
+    boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    void post(DeviceId deviceId, E event) {
+        if (listeners.isEmpty() || executor.isShutdown()) {
+            return;
+        }
+        DeviceQueue queue = queues.get(deviceId);
+        if (queue == null) {
+            queue = queues.computeIfAbsent(deviceId, DeviceQueue::new);
+        }
+        queue.add(event);
+    }
+
+    /**
+     * Queues events behind the others of their device, and runs a callback
+     * once the listeners have handled them, so that the source can pace
+     * itself on the listeners. The flush is not delayed, as the source waits.
+     */
+    void post(DeviceId deviceId, List<E> events, Runnable onDelivered) {
+        if (listeners.isEmpty() || executor.isShutdown()) {
+            onDelivered.run();
+            return;
+        }
+        DeviceQueue queue = queues.get(deviceId);
+        if (queue == null) {
+            queue = queues.computeIfAbsent(deviceId, DeviceQueue::new);
+        }
+        queue.addAll(events, onDelivered);
+    }
+
+    /**
+     * Forgets the queue of a removed device. Events already queued are still
+     * delivered by the flush holding the queue.
+     */
+    void remove(DeviceId deviceId) {
+        queues.remove(deviceId);
+    }
+
+    /**
+     * Events of one device waiting for delivery.
+     */
+    private final class DeviceQueue implements Runnable {
+
+        private final DeviceId deviceId;
+        // Events, and the Delivered callbacks of the sources waiting for them.
+        private final Queue<Object> items = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger callbacks = new AtomicInteger();
+        // Set while a flush is armed or running, so that posts do not arm another one.
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        // Keeps the batches ordered when an early flush overlaps an armed one.
+        private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+        DeviceQueue(DeviceId deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        void add(E event) {
+            items.add(event);
+            final int size = pending.incrementAndGet();
+            if (scheduled.compareAndSet(false, true)) {
+                submit(size >= maxBatchSize ? 0 : maxBatchDelayNanos);
+            } else if (size == maxBatchSize) {
+                // A full batch should not wait for the armed flush.
+                submit(0);
+            }
+        }
+
+        void addAll(List<E> events, Runnable onDelivered) {
+            items.addAll(events);
+            items.add(new Delivered(onDelivered));
+            callbacks.incrementAndGet();
+            pending.addAndGet(events.size() + 1);
+            scheduled.set(true);
+            submit(0);
+        }
+
+        @Override
+        public void run() {
+            if (!flushing.compareAndSet(false, true)) {
+                // The running flush re-arms itself for what it leaves behind.
+                return;
+            }
+            try {
+                flush(pending.get());
+            } finally {
+                flushing.set(false);
+            }
+            scheduled.set(false);
+            // Events posted during the flush saw the flag set and did not arm one.
+            final int size = pending.get();
+            if (size > 0 && scheduled.compareAndSet(false, true)) {
+                submit(size >= maxBatchSize || callbacks.get() > 0 ? 0 : maxBatchDelayNanos);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void flush(int count) {
+            List<E> batch = null;
+            int polled = 0;
+            for (int i = 0; i < count; i++) {
+                final Object item = items.poll();
+                if (item == null) {
+                    break;
+                }
+                polled++;
+                if (item instanceof Delivered) {
+                    if (batch != null) {
+                        pending.addAndGet(-polled);
+                        polled = 0;
+                        deliver(Collections.unmodifiableList(batch));
+                        batch = null;
+                    }
+                    callbacks.decrementAndGet();
+                    runCallback(((Delivered) item).callback);
+                    continue;
+                }
+                if (batch == null) {
+                    batch = new ArrayList<>(Math.min(count - i, maxBatchSize));
+                }
+                batch.add((E) item);
+                if (batch.size() == maxBatchSize) {
+                    pending.addAndGet(-polled);
+                    polled = 0;
+                    deliver(Collections.unmodifiableList(batch));
+                    batch = null;
+                }
+            }
+            pending.addAndGet(-polled);
+            if (batch != null) {
+                deliver(Collections.unmodifiableList(batch));
+            }
+        }
+
+        @SuppressWarnings("IllegalCatch")
+        private void deliver(List<E> batch) {
+            for (GrpcEventListener<E> listener : listeners) {
+                try {
+                    listener.event(deviceId, batch);
+                } catch (Throwable e) {
+                    log.error("Exception in {} event listener {} for {}", serviceName, listener, deviceId, e);
+                }
+            }
+        }
+
+        private void submit(long delayNanos) {
+            try {
+                if (delayNanos == 0) {
+                    executor.execute(this);
+                } else {
+                    executor.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                log.debug("Dropping {} events for {}, controller is closed", serviceName, deviceId);
+            }
+        }
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    private void runCallback(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Throwable e) {
+            log.error("Exception in {} event delivery callback", serviceName, e);
+        }
+    }
+
+    /**
+     * Callback of a source, queued behind its events.
+     */
+    private static final class Delivered {
+
+        private final Runnable callback;
+
+        Delivered(Runnable callback) {
+            this.callback = callback;
+        }
+    }
+}
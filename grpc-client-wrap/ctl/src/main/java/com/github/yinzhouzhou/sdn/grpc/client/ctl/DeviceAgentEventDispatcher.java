@@ -0,0 +1,102 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceAgentEvent;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceAgentListener;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.ProviderId;
+import com.github.yinzhouzhou.sdn.grpc.utils.concurrent.SerializingExecutor;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+
+/**
+ * Delivers device agent events to the listeners registered for their device.
+ *
+ * <p>The listeners of a device are an immutable snapshot, replaced on each
+ * registration change, so that posting an event is a map read and takes no
+ * lock. Each device has a {@link SerializingExecutor} over the shared
+ * executor: its events reach the listeners in order, while a slow listener
+ * only delays the events of its own device and never the gRPC thread which
+ * posted them.
+ */
+final class DeviceAgentEventDispatcher {
+
+    private final Logger log = getLogger(getClass());
+
+    private final Executor executor;
+    private final ConcurrentMap<DeviceId, DeviceListeners> listeners = Maps.newConcurrentMap();
+
+    DeviceAgentEventDispatcher(Executor executor) {
+        this.executor = checkNotNull(executor);
+    }
+
+    void addListener(DeviceId deviceId, ProviderId providerId, DeviceAgentListener listener) {
+        checkNotNull(deviceId, "deviceId cannot be null");
+        checkNotNull(providerId, "providerId cannot be null");
+        checkNotNull(listener, "listener cannot be null");
+        listeners.compute(deviceId, (id, current) -> {
+            final DeviceListeners updated = current == null ? new DeviceListeners() : current;
+            // Built first, as ImmutableMap.Builder rejects the duplicate key of a replaced listener.
+            final Map<ProviderId, DeviceAgentListener> copy = Maps.newHashMap(updated.snapshot);
+            copy.put(providerId, listener);
+            updated.snapshot = ImmutableMap.copyOf(copy);
+            return updated;
+        });
+    }
+
+    void removeListener(DeviceId deviceId, ProviderId providerId) {
+        checkNotNull(deviceId, "deviceId cannot be null");
+        checkNotNull(providerId, "providerId cannot be null");
+        listeners.computeIfPresent(deviceId, (id, current) -> {
+            if (!current.snapshot.containsKey(providerId)) {
+                return current;
+            }
+            if (current.snapshot.size() == 1) {
+                return null;
+            }
+            final Map<ProviderId, DeviceAgentListener> copy = Maps.newHashMap(current.snapshot);
+            copy.remove(providerId);
+            current.snapshot = ImmutableMap.copyOf(copy);
+            return current;
+        });
+    }
+
+    void post(DeviceAgentEvent event) {
+        final DeviceListeners device = listeners.get(event.getDeviceId());
+        if (device == null) {
+            return;
+        }
+        // Listeners registered at posting time, whatever happens before delivery.
+        final Collection<DeviceAgentListener> targets = device.snapshot.values();
+        device.executor.execute(() -> deliver(event, targets));
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    private void deliver(DeviceAgentEvent event, Collection<DeviceAgentListener> targets) {
+        for (DeviceAgentListener listener : targets) {
+            try {
+                listener.event(event);
+            } catch (Throwable e) {
+                log.error("Exception in device agent listener {} for {} event of {}",
+                    listener, event.getType(), event.getDeviceId(), e);
+            }
+        }
+    }
+
+    /**
+     * Listeners of one device and the executor keeping their events ordered.
+     */
+    private final class DeviceListeners {
+
+        private final SerializingExecutor executor = new SerializingExecutor(DeviceAgentEventDispatcher.this.executor);
+        // Replaced, never modified, under the map entry lock.
+        private volatile ImmutableMap<ProviderId, DeviceAgentListener> snapshot = ImmutableMap.of();
+    }
+}
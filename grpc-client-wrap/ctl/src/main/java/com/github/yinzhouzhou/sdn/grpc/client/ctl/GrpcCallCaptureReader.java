@@ -0,0 +1,314 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+import static java.lang.String.format;
+
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+import com.google.protobuf.UnknownFieldSet;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reader of the binary gRPC call capture, written when the message log format
+ * is {@link GrpcCallLogFormat#BINARY}.
+ *
+ * <p>A capture is a directory of segment files named {@code segment-NNNNNNNN.cap}
+ * in write order; older segments are deleted when the capture exceeds its
+ * segment count. A segment starts with a header:
+ * <pre>
+ * long   magic ("GRPCCAP1")
+ * int    format version
+ * short  channel URI length, followed by the UTF-8 channel URI
+ * </pre>
+ * followed by records, all numbers big-endian:
+ * <pre>
+ * int    record length, excluding this field
+ * byte   record type, see {@link RecordType}
+ * long   timestamp, nanoseconds since the epoch
+ * long   call ID
+ * short  method name length, followed by the UTF-8 full method name
+ * int    payload length, followed by the payload
+ * </pre>
+ * A record length of zero marks the end of a segment which was not closed.
+ *
+ * <p>Run as a program to pretty-print captures: {@code GrpcCallCaptureReader
+ * <capture directory or segment file>...}. Messages are printed as protobuf
+ * fields by number, as no schema is stored; use {@link Record#parse(Parser)}
+ * to replay them with their actual type.
+ */
+public final class GrpcCallCaptureReader {
+
+    static final long MAGIC = 0x4752504343415031L;
+    static final int VERSION = 1;
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".cap";
+    static final int RECORD_FIXED_SIZE = 1 + 8 + 8 + 2 + 4;
+
+    /**
+     * Type of a capture record.
+     */
+    public enum RecordType {
+        /**
+         * Call started, the payload is the request headers as text.
+         */
+        STARTED(1),
+
+        /**
+         * Message sent, the payload is the serialized message.
+         */
+        OUTBOUND(2),
+
+        /**
+         * Message received, the payload is the serialized message.
+         */
+        INBOUND(3),
+
+        /**
+         * Call closed, the payload is the status and trailers as text.
+         */
+        CLOSED(4),
+
+        /**
+         * Entries dropped because the writer could not keep up, the payload is
+         * the count as a long. Method name and call ID are empty.
+         */
+        DROPPED(5);
+
+        private final byte code;
+
+        RecordType(int code) {
+            this.code = (byte) code;
+        }
+
+        byte code() {
+            return code;
+        }
+
+        static RecordType fromCode(byte code) {
+            for (RecordType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException(format("Unknown record type %d", code));
+        }
+    }
+
+    /**
+     * Record of a capture.
+     */
+    public static final class Record {
+
+        private final String channelUri;
+        private final RecordType type;
+        private final long timeNanos;
+        private final long callId;
+        private final String methodName;
+        private final byte[] payload;
+
+        Record(String channelUri, RecordType type, long timeNanos, long callId,
+               String methodName, byte[] payload) {
+            this.channelUri = channelUri;
+            this.type = type;
+            this.timeNanos = timeNanos;
+            this.callId = callId;
+            this.methodName = methodName;
+            this.payload = payload;
+        }
+
+        public String channelUri() {
+            return channelUri;
+        }
+
+        public RecordType type() {
+            return type;
+        }
+
+        public long timeNanos() {
+            return timeNanos;
+        }
+
+        public Instant time() {
+            return Instant.ofEpochSecond(0, timeNanos);
+        }
+
+        public long callId() {
+            return callId;
+        }
+
+        public String methodName() {
+            return methodName;
+        }
+
+        public byte[] payload() {
+            return payload.clone();
+        }
+
+        /**
+         * Parses the payload of an {@link RecordType#OUTBOUND} or
+         * {@link RecordType#INBOUND} record.
+         *
+         * @param parser parser of the message type
+         * @param <T>    message type
+         * @return the message
+         * @throws InvalidProtocolBufferException if the payload is not a
+         *                                        message of that type
+         */
+        public <T> T parse(Parser<T> parser) throws InvalidProtocolBufferException {
+            return parser.parseFrom(payload);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder out = new StringBuilder()
+                .append("*** ").append(time()).append(" - ");
+            switch (type) {
+                case STARTED:
+                    out.append(methodName).append(" STARTED [callId=").append(callId).append("]\n")
+                        .append(text(payload)).append('\n');
+                    break;
+                case OUTBOUND:
+                    out.append(methodName).append(" >> OUTBOUND >> [callId=").append(callId).append("]\n")
+                        .append(message(payload));
+                    break;
+                case INBOUND:
+                    out.append(methodName).append(" << INBOUND << [callId=").append(callId).append("]\n")
+                        .append(message(payload));
+                    break;
+                case CLOSED:
+                    out.append(methodName).append(" CLOSED [callId=").append(callId).append("]\n")
+                        .append(text(payload)).append('\n');
+                    break;
+                case DROPPED:
+                    out.append(ByteBuffer.wrap(payload).getLong()).append(" entries DROPPED\n");
+                    break;
+                default:
+                    break;
+            }
+            return out.toString();
+        }
+    }
+
+    private GrpcCallCaptureReader() {
+    }
+
+    /**
+     * Lists the segment files of a capture directory in write order.
+     *
+     * @param directory capture directory
+     * @return segment files
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+            directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        // Segment numbers are zero-padded, names sort in write order.
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Reads all the records of a segment file.
+     *
+     * @param segment  segment file
+     * @param consumer receives each record in write order
+     * @throws IOException if the file cannot be read or is not a capture segment
+     */
+    public static void read(Path segment, Consumer<Record> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 + 4 + 2 || buffer.getLong() != MAGIC) {
+                throw new IOException(format("%s is not a gRPC call capture segment", segment));
+            }
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(format("Unsupported capture version %d in %s", version, segment));
+            }
+            final String channelUri = readString(buffer, buffer.getShort() & 0xFFFF);
+            while (buffer.remaining() >= 4) {
+                final int position = buffer.position();
+                final int length = buffer.getInt();
+                if (length == 0) {
+                    break;
+                }
+                if (length < RECORD_FIXED_SIZE || length > buffer.remaining()) {
+                    throw new IOException(format("Corrupted record at offset %d of %s", position, segment));
+                }
+                final RecordType type = RecordType.fromCode(buffer.get());
+                final long timeNanos = buffer.getLong();
+                final long callId = buffer.getLong();
+                final String methodName = readString(buffer, buffer.getShort() & 0xFFFF);
+                final byte[] payload = new byte[buffer.getInt()];
+                buffer.get(payload);
+                consumer.accept(new Record(channelUri, type, timeNanos, callId, methodName, payload));
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    private static String message(byte[] payload) {
+        try {
+            return UnknownFieldSet.parseFrom(payload).toString();
+        } catch (InvalidProtocolBufferException e) {
+            // Not protobuf, e.g. a JSON marshaller: print as text if possible.
+            try {
+                final CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .decode(ByteBuffer.wrap(payload));
+                return chars.toString() + '\n';
+            } catch (CharacterCodingException notText) {
+                return BaseEncoding.base16().encode(payload) + '\n';
+            }
+        }
+    }
+
+    /**
+     * Pretty-prints captures to the standard output.
+     *
+     * @param args capture directories or segment files
+     * @throws IOException if a capture cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: GrpcCallCaptureReader <capture directory or segment file>...");
+            System.exit(1);
+        }
+        final PrintStream out = System.out;
+        for (String arg : args) {
+            final Path path = Paths.get(arg);
+            final List<Path> files = Files.isDirectory(path)
+                ? segments(path) : Collections.singletonList(path);
+            for (Path file : files) {
+                read(file, out::println);
+            }
+        }
+    }
+}
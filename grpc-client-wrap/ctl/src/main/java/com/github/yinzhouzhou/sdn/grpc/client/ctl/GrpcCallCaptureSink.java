@@ -0,0 +1,217 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+import static java.lang.String.format;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.GrpcCallCaptureReader.RecordType;
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.GrpcCallLogWriter.Entry;
+import com.google.common.io.ByteStreams;
+import io.grpc.MethodDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.slf4j.Logger;
+
+/**
+ * Binary capture of the gRPC calls of one channel, in the format described by
+ * {@link GrpcCallCaptureReader}.
+ *
+ * <p>Records are appended to a memory-mapped segment file of fixed size; when
+ * it is full the segment is truncated to its content and a new one is mapped.
+ * Only the last {@code maxSegments} segments are kept, which bounds the disk
+ * usage of the capture. Messages are stored serialized by the marshaller of
+ * their method, without any truncation.
+ */
+final class GrpcCallCaptureSink implements GrpcCallLogWriter.Sink {
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    private static final Logger LOG = getLogger(GrpcCallCaptureSink.class);
+
+    private static final byte[] NO_METHOD = new byte[0];
+
+    private final URI channelUri;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final byte[] header;
+    private final Map<String, byte[]> methodNames = new HashMap<>();
+    private final Deque<Path> segments = new ArrayDeque<>();
+
+    private Path directory;
+    private int nextSegment;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private boolean failed;
+
+    GrpcCallCaptureSink(URI channelUri, int segmentSize, int maxSegments) {
+        this.channelUri = channelUri;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        final byte[] uri = channelUri.toString().getBytes(StandardCharsets.UTF_8);
+        this.header = ByteBuffer.allocate(8 + 4 + 2 + uri.length)
+            .putLong(GrpcCallCaptureReader.MAGIC)
+            .putInt(GrpcCallCaptureReader.VERSION)
+            .putShort((short) uri.length)
+            .put(uri)
+            .array();
+    }
+
+    @Override
+    public void write(Entry entry) {
+        final byte[] payload;
+        final RecordType type;
+        switch (entry.kind) {
+            case STARTED:
+                type = RecordType.STARTED;
+                payload = entry.details.getBytes(StandardCharsets.UTF_8);
+                break;
+            case OUTBOUND:
+                type = RecordType.OUTBOUND;
+                payload = serialize(entry, true);
+                break;
+            case INBOUND:
+                type = RecordType.INBOUND;
+                payload = serialize(entry, false);
+                break;
+            case CLOSED:
+                type = RecordType.CLOSED;
+                payload = (entry.payload + "\n" + entry.details).getBytes(StandardCharsets.UTF_8);
+                break;
+            default:
+                return;
+        }
+        if (payload == null) {
+            return;
+        }
+        final byte[] method = methodNames.computeIfAbsent(
+            entry.method.getFullMethodName(), name -> name.getBytes(StandardCharsets.UTF_8));
+        writeRecord(type, entry.timeNanos, entry.callId, method, payload);
+    }
+
+    @Override
+    public void dropped(long timeNanos, long count) {
+        writeRecord(RecordType.DROPPED, timeNanos, 0, NO_METHOD,
+                    ByteBuffer.allocate(8).putLong(count).array());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] serialize(Entry entry, boolean request) {
+        final MethodDescriptor<Object, Object> method = (MethodDescriptor<Object, Object>) entry.method;
+        try (InputStream stream = request
+            ? method.streamRequest(entry.payload) : method.streamResponse(entry.payload)) {
+            return ByteStreams.toByteArray(stream);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to serialize {} message for the gRPC call capture",
+                     method.getFullMethodName(), e);
+            return null;
+        }
+    }
+
+    private void writeRecord(RecordType type, long timeNanos, long callId, byte[] method, byte[] payload) {
+        final int length = GrpcCallCaptureReader.RECORD_FIXED_SIZE + method.length + payload.length;
+        if (!ensureCapacity(4 + length)) {
+            return;
+        }
+        segment.putInt(length)
+            .put(type.code())
+            .putLong(timeNanos)
+            .putLong(callId)
+            .putShort((short) method.length)
+            .put(method)
+            .putInt(payload.length)
+            .put(payload);
+    }
+
+    private boolean ensureCapacity(int recordSize) {
+        if (segment != null && segment.remaining() >= recordSize) {
+            return true;
+        }
+        if (failed) {
+            return false;
+        }
+        finishSegment();
+        try {
+            openSegment(recordSize);
+            return true;
+        } catch (IOException e) {
+            failed = true;
+            LOG.error("Unable to initialize gRPC call capture of {}", channelUri, e);
+            return false;
+        }
+    }
+
+    private void openSegment(int recordSize) throws IOException {
+        if (directory == null) {
+            final String safeChName = channelUri.toString()
+                .replaceAll("[^A-Za-z0-9]", "_").toLowerCase(Locale.ENGLISH);
+            directory = Files.createTempDirectory(safeChName + "_");
+            LOG.info("Created gRPC call capture directory for channel {}: {}",
+                     channelUri, directory.toAbsolutePath());
+        }
+        final Path file = directory.resolve(format("%s%08d%s", GrpcCallCaptureReader.SEGMENT_PREFIX,
+                                                   nextSegment++, GrpcCallCaptureReader.SEGMENT_SUFFIX));
+        segmentChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                                          StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // A record larger than a segment gets a segment of its own.
+        final long size = Math.max(segmentSize, (long) header.length + recordSize);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segment.put(header);
+        segments.addLast(file);
+        while (segments.size() > maxSegments) {
+            final Path oldest = segments.removeFirst();
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete gRPC call capture segment {}", oldest, e);
+            }
+        }
+    }
+
+    private void finishSegment() {
+        if (segment == null) {
+            return;
+        }
+        final int end = segment.position();
+        segment.force();
+        segment = null;
+        try {
+            // Not supported on every platform while the file is mapped; the
+            // reader stops at the zeroed tail anyway.
+            segmentChannel.truncate(end);
+        } catch (IOException e) {
+            LOG.debug("Unable to truncate gRPC call capture segment", e);
+        }
+        try {
+            segmentChannel.close();
+        } catch (IOException e) {
+            LOG.error("Unable to close gRPC call capture segment", e);
+        }
+        segmentChannel = null;
+    }
+
+    @Override
+    public void flush() {
+        // The mapped segment is in the page cache already, nothing to flush.
+    }
+
+    @Override
+    public void close() {
+        if (segment != null) {
+            LOG.info("Closing call capture for {}...", channelUri);
+        }
+        finishSegment();
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+/**
+ * Format of the gRPC call log written when message logging is enabled.
+ */
+public enum GrpcCallLogFormat {
+
+    /**
+     * Human-readable text file, messages over 4096 characters are truncated.
+     */
+    TEXT,
+
+    /**
+     * Binary capture of the serialized messages in size-bounded rotating
+     * segment files, see {@link GrpcCallCaptureReader}.
+     */
+    BINARY
+}
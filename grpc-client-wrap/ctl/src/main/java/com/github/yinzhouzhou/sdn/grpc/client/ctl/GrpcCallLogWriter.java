@@ -0,0 +1,362 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+import static java.lang.String.format;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.github.yinzhouzhou.sdn.grpc.utils.concurrent.MpscRingBuffer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.MethodDescriptor;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+
+/**
+ * Asynchronous sink of the gRPC call log of one channel.
+ *
+ * <p>gRPC callback threads only pay for an {@link MpscRingBuffer#offer(Object)}:
+ * entries are rendered and written by a single background thread shared by all
+ * channels, which drains each buffer in batches into a {@link Sink}, either
+ * the text log or the binary capture. When a buffer is full the entry is
+ * dropped and counted; the writer reports the number of dropped entries in the
+ * log itself.
+ */
+final class GrpcCallLogWriter {
+
+    /**
+     * Kind of call log entry.
+     */
+    enum Kind {
+        STARTED,
+        OUTBOUND,
+        INBOUND,
+        CLOSED
+    }
+
+    /**
+     * Destination of the entries, only used by the writer thread.
+     */
+    interface Sink {
+
+        void write(Entry entry);
+
+        void dropped(long timeNanos, long count);
+
+        void flush();
+
+        void close();
+    }
+
+    private static final Logger LOG = getLogger(GrpcCallLogWriter.class);
+
+    private static final int BUFFER_CAPACITY = 8192;
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final int MAX_ENTRIES_PER_DRAIN = 4096;
+
+    // Wall clock time of nanoTime() zero, so that entries get nanosecond
+    // timestamps from a monotonic clock.
+    private static final long EPOCH_NANOS_OFFSET =
+        TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+    private static final ExecutorService WRITER_EXECUTOR = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder()
+            .setNameFormat("grpc-call-log-writer-%d")
+            .setDaemon(true)
+            .setUncaughtExceptionHandler((thread, throwable) ->
+                LOG.error("Uncaught exception on {}", thread.getName(), throwable))
+            .build());
+
+    private final URI channelUri;
+    private final MpscRingBuffer<Entry> buffer = new MpscRingBuffer<>(BUFFER_CAPACITY);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedEntries = new AtomicLong();
+    private volatile boolean closed;
+
+    // Only accessed by the writer thread.
+    private final Sink sink;
+    private boolean sinkClosed;
+    private long reportedDroppedEntries;
+
+    GrpcCallLogWriter(URI channelUri) {
+        this(channelUri, GrpcCallLogFormat.TEXT, GrpcCallCaptureSink.DEFAULT_SEGMENT_SIZE,
+             GrpcCallCaptureSink.DEFAULT_MAX_SEGMENTS);
+    }
+
+    GrpcCallLogWriter(URI channelUri, GrpcCallLogFormat format, int segmentSize, int maxSegments) {
+        this.channelUri = channelUri;
+        this.sink = format == GrpcCallLogFormat.BINARY
+            ? new GrpcCallCaptureSink(channelUri, segmentSize, maxSegments)
+            : new TextSink(channelUri);
+    }
+
+    /**
+     * Queues an entry, never blocks.
+     *
+     * @param kind    entry kind
+     * @param method  method of the call
+     * @param callId  call ID
+     * @param payload message, or status for {@link Kind#CLOSED}; null for
+     *                {@link Kind#STARTED}
+     * @param details headers or trailers already rendered, may be null
+     */
+    void append(Kind kind, MethodDescriptor<?, ?> method, long callId, Object payload, String details) {
+        if (closed) {
+            return;
+        }
+        if (!buffer.offer(new Entry(nowNanos(), kind, method, callId, payload, details))) {
+            droppedEntries.incrementAndGet();
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Returns the number of entries dropped because the buffer was full.
+     *
+     * @return dropped entries
+     */
+    long droppedEntries() {
+        return droppedEntries.get();
+    }
+
+    /**
+     * Writes out the queued entries and closes the log, asynchronously.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            WRITER_EXECUTOR.execute(() -> {
+                drainAll(Integer.MAX_VALUE);
+                sink.close();
+                sinkClosed = true;
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Unable to close gRPC call log of {}", channelUri, e);
+        }
+    }
+
+    private static long nowNanos() {
+        return EPOCH_NANOS_OFFSET + System.nanoTime();
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                WRITER_EXECUTOR.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        if (sinkClosed) {
+            // Scheduled by an append racing with close. Leave drainScheduled set so that
+            // no other drain is scheduled, the sink would reopen a file nobody closes.
+            return;
+        }
+        // Bound the work of one task so that busy channels do not starve the
+        // others sharing the writer thread.
+        drainAll(MAX_ENTRIES_PER_DRAIN);
+        drainScheduled.set(false);
+        if (!buffer.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void drainAll(int maxEntries) {
+        int drained = 0;
+        int count;
+        do {
+            count = buffer.drain(sink::write, DRAIN_BATCH_SIZE);
+            drained += count;
+        } while (count > 0 && drained < maxEntries);
+        final long dropped = droppedEntries.get();
+        if (dropped != reportedDroppedEntries) {
+            sink.dropped(nowNanos(), dropped - reportedDroppedEntries);
+            reportedDroppedEntries = dropped;
+        }
+        sink.flush();
+    }
+
+    /**
+     * Call event captured on the gRPC thread, written on the writer thread.
+     * Messages are expected to be immutable, as protobuf messages are.
+     */
+    static final class Entry {
+
+        final long timeNanos;
+        final Kind kind;
+        final MethodDescriptor<?, ?> method;
+        final long callId;
+        final Object payload;
+        final String details;
+
+        Entry(long timeNanos, Kind kind, MethodDescriptor<?, ?> method,
+              long callId, Object payload, String details) {
+            this.timeNanos = timeNanos;
+            this.kind = kind;
+            this.method = method;
+            this.callId = callId;
+            this.payload = payload;
+            this.details = details;
+        }
+
+        void render(StringBuilder out) {
+            out.append(method.getFullMethodName());
+            switch (kind) {
+                case STARTED:
+                    out.append(" STARTED [callId=").append(callId).append("]\n")
+                        .append(details).append("\n\n");
+                    break;
+                case OUTBOUND:
+                    out.append(" >> OUTBOUND >> [callId=").append(callId).append("]\n")
+                        .append(payload).append('\n');
+                    break;
+                case INBOUND:
+                    out.append(" << INBOUND << [callId=").append(callId).append("]\n")
+                        .append(payload).append('\n');
+                    break;
+                case CLOSED:
+                    out.append(" CLOSED [callId=").append(callId).append("]\n")
+                        .append(payload).append('\n')
+                        .append(details).append("\n\n");
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Human-readable log in a temporary file, written through a 64 KB buffer.
+     */
+    private static final class TextSink implements Sink {
+
+        private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+        private static final int MAX_MESSAGE_LENGTH = 4096;
+        private static final int TRUNCATED_MESSAGE_LENGTH = 256;
+
+        private final URI channelUri;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S");
+        private final StringBuilder text = new StringBuilder();
+        private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private FileChannel fileChannel;
+        private boolean fileFailed;
+
+        TextSink(URI channelUri) {
+            this.channelUri = channelUri;
+        }
+
+        @Override
+        public void write(Entry entry) {
+            text.setLength(0);
+            text.append("*** ").append(formatTime(entry.timeNanos)).append(" - ");
+            final int start = text.length();
+            entry.render(text);
+            if (text.length() - start > MAX_MESSAGE_LENGTH) {
+                text.setLength(start + TRUNCATED_MESSAGE_LENGTH);
+                text.append("... TRUNCATED!\n\n");
+            }
+            write(text);
+        }
+
+        @Override
+        public void dropped(long timeNanos, long count) {
+            text.setLength(0);
+            text.append(format("*** %s - %d entries DROPPED, call log buffer full\n\n",
+                               formatTime(timeNanos), count));
+            write(text);
+        }
+
+        private String formatTime(long timeNanos) {
+            return dateFormat.format(new Date(TimeUnit.NANOSECONDS.toMillis(timeNanos)));
+        }
+
+        private void write(CharSequence chars) {
+            if (!initFile()) {
+                return;
+            }
+            final byte[] bytes = chars.toString().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > writeBuffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > writeBuffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                writeBuffer.put(bytes);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (fileChannel == null || writeBuffer.position() == 0) {
+                return;
+            }
+            writeBuffer.flip();
+            writeFully(writeBuffer);
+            writeBuffer.clear();
+        }
+
+        private void writeFully(ByteBuffer bytes) {
+            try {
+                while (bytes.hasRemaining()) {
+                    fileChannel.write(bytes);
+                }
+            } catch (IOException e) {
+                LOG.error("Unable to write gRPC call log", e);
+            }
+        }
+
+        private boolean initFile() {
+            if (fileChannel != null) {
+                return true;
+            }
+            if (fileFailed) {
+                return false;
+            }
+            final String safeChName = channelUri.toString()
+                .replaceAll("[^A-Za-z0-9]", "_").toLowerCase(Locale.ENGLISH);
+            try {
+                final File tmpFile = File.createTempFile(safeChName + "_", ".log");
+                fileChannel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE);
+                LOG.info("Created gRPC call log file for channel {}: {}",
+                         channelUri, tmpFile.getAbsolutePath());
+                return true;
+            } catch (IOException e) {
+                fileFailed = true;
+                LOG.error("Unable to initialize gRPC call log writer", e);
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (fileChannel == null) {
+                return;
+            }
+            try {
+                LOG.info("Closing log writer for {}...", channelUri);
+                fileChannel.close();
+            } catch (IOException e) {
+                LOG.error("Unable to close gRPC call log writer", e);
+            }
+            fileChannel = null;
+        }
+    }
+}
@@ -8,7 +8,9 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static java.lang.String.format;
 
 import com.github.yinzhouzhou.sdn.grpc.client.api.GrpcChannelController;
+import com.github.yinzhouzhou.sdn.grpc.utils.transport.GrpcTransportResources;
 import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.LoadBalancerRegistry;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
@@ -20,18 +22,36 @@ import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
 import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
 import io.grpc.netty.shaded.io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
 import javax.net.ssl.SSLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Default implementation of the GrpcChannelController.
+ *
+ * <p>Channels created from a URI can be pooled with the {@code poolSize} query
+ * parameter, e.g. {@code grpc://10.0.0.1:50001?poolSize=4}: the controller
+ * then opens that many connections to the target and returns a single channel
+ * spreading calls over them. The optional {@code poolPolicy} parameter selects
+ * how calls are spread, {@code round_robin} (default) or
+ * {@code least_outstanding}.
  */
 
 public class GrpcChannelControllerImpl implements GrpcChannelController {
@@ -39,6 +59,13 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
     private static final String GRPC = "grpc";
     private static final String GRPCS = "grpcs";
 
+    private static final String POOL_SIZE_PARAM = "poolSize";
+    private static final String POOL_POLICY_PARAM = "poolPolicy";
+    private static final int MAX_POOL_SIZE = 64;
+
+    private static final long CHANNEL_TERMINATION_TIMEOUT_SECONDS = 5;
+    private static final long REAPER_POLL_MILLIS = 10;
+
     private static final int DEFAULT_MAX_INBOUND_MSG_SIZE = 256; // Megabytes.
     private static final int MEGABYTES = 1024 * 1024;
 
@@ -52,6 +79,10 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
      */
     private AtomicBoolean enableMessageLog = new AtomicBoolean(false);
 
+    private volatile GrpcCallLogFormat messageLogFormat = GrpcCallLogFormat.TEXT;
+    private volatile int captureSegmentSize = GrpcCallCaptureSink.DEFAULT_SEGMENT_SIZE;
+    private volatile int captureMaxSegments = GrpcCallCaptureSink.DEFAULT_MAX_SEGMENTS;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private Map<URI, ManagedChannel> channels;
@@ -59,9 +90,35 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
 
     private final Striped<Lock> channelLocks = Striped.lock(30);
 
+    // Shuts down destroyed channels and waits for their termination.
+    private ScheduledExecutorService reaper;
+
+    private final GrpcTransportResources transportResources;
+
+    /**
+     * Creates a controller whose channels use the process-wide
+     * {@link GrpcTransportResources#shared() transport resources}.
+     */
+    public GrpcChannelControllerImpl() {
+        this(GrpcTransportResources.shared());
+    }
+
+    /**
+     * Creates a controller whose channels run on the given event loops.
+     *
+     * @param transportResources transport resources, not closed by this controller
+     */
+    public GrpcChannelControllerImpl(GrpcTransportResources transportResources) {
+        this.transportResources = checkNotNull(transportResources);
+    }
+
     public void activate() {
         channels = new ConcurrentHashMap<>();
         interceptors = new ConcurrentHashMap<>();
+        reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("grpc-channel-reaper-%d")
+                .setDaemon(true)
+                .build());
         LoadBalancerRegistry.getDefaultRegistry()
                 .register(PICK_FIRST_LOAD_BALANCER_PROVIDER);
         NameResolverRegistry.getDefaultRegistry()
@@ -80,19 +137,44 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
         interceptors.values().forEach(GrpcLoggingInterceptor::close);
         interceptors.clear();
         interceptors = null;
+        reaper.shutdown();
         log.info("Stopped");
     }
 
     @Override
     public ManagedChannel create(URI channelUri) {
-        return create(channelUri, makeChannelBuilder(channelUri));
+        checkNotNull(channelUri);
+        final Map<String, String> params = queryParams(channelUri);
+        final int poolSize = poolSize(params);
+        if (poolSize == 1) {
+            return create(channelUri, makeChannelBuilder(channelUri));
+        }
+        final PooledManagedChannel.Policy policy = poolPolicy(params);
+        return doCreate(channelUri, interceptor -> {
+            final List<ManagedChannel> pool = new ArrayList<>(poolSize);
+            try {
+                for (int i = 0; i < poolSize; i++) {
+                    pool.add(checkNotNull(makeChannelBuilder(channelUri))
+                                     .intercept(interceptor).build());
+                }
+            } catch (RuntimeException e) {
+                pool.forEach(ManagedChannel::shutdownNow);
+                throw e;
+            }
+            log.info("Pooling {} connections to {} ({})", poolSize, channelUri, policy);
+            return new PooledManagedChannel(pool, policy);
+        });
     }
 
     @Override
     public ManagedChannel create(URI channelUri, ManagedChannelBuilder<?> channelBuilder) {
         checkNotNull(channelUri);
         checkNotNull(channelBuilder);
+        return doCreate(channelUri, interceptor -> channelBuilder.intercept(interceptor).build());
+    }
 
+    private ManagedChannel doCreate(URI channelUri,
+                                    Function<GrpcLoggingInterceptor, ManagedChannel> channelFactory) {
         channelLocks.get(channelUri).lock();
         try {
             if (channels.containsKey(channelUri)) {
@@ -103,10 +185,16 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
             log.info("Creating new gRPC channel {}...", channelUri);
 
             final GrpcLoggingInterceptor interceptor = new GrpcLoggingInterceptor(
-                    channelUri, enableMessageLog);
-            channelBuilder.intercept(interceptor);
+                    enableMessageLog, new GrpcCallLogWriter(
+                            channelUri, messageLogFormat, captureSegmentSize, captureMaxSegments));
 
-            final ManagedChannel channel = channelBuilder.build();
+            final ManagedChannel channel;
+            try {
+                channel = channelFactory.apply(interceptor);
+            } catch (RuntimeException e) {
+                interceptor.close();
+                throw e;
+            }
 
             channels.put(channelUri, channel);
             interceptors.put(channelUri, interceptor);
@@ -117,6 +205,49 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
         }
     }
 
+    private static Map<String, String> queryParams(URI channelUri) {
+        final String query = channelUri.getQuery();
+        if (isNullOrEmpty(query)) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> params = new HashMap<>();
+        for (String param : query.split("&")) {
+            final int separator = param.indexOf('=');
+            if (separator > 0) {
+                params.put(param.substring(0, separator), param.substring(separator + 1));
+            }
+        }
+        return params;
+    }
+
+    private static int poolSize(Map<String, String> params) {
+        final String value = params.get(POOL_SIZE_PARAM);
+        if (value == null) {
+            return 1;
+        }
+        final int poolSize;
+        try {
+            poolSize = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(format("Invalid %s '%s'", POOL_SIZE_PARAM, value), e);
+        }
+        checkArgument(poolSize >= 1 && poolSize <= MAX_POOL_SIZE,
+                      format("%s must be between 1 and %d", POOL_SIZE_PARAM, MAX_POOL_SIZE));
+        return poolSize;
+    }
+
+    private static PooledManagedChannel.Policy poolPolicy(Map<String, String> params) {
+        final String value = params.get(POOL_POLICY_PARAM);
+        if (value == null) {
+            return PooledManagedChannel.Policy.ROUND_ROBIN;
+        }
+        try {
+            return PooledManagedChannel.Policy.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(format("Invalid %s '%s'", POOL_POLICY_PARAM, value), e);
+        }
+    }
+
     private NettyChannelBuilder makeChannelBuilder(URI channelUri) {
 
         checkArgument(channelUri.getScheme().equals(GRPC)
@@ -129,8 +260,8 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
 
         final boolean useTls = channelUri.getScheme().equals(GRPCS);
 
-        final NettyChannelBuilder channelBuilder = NettyChannelBuilder
-                .forAddress(channelUri.getHost(), channelUri.getPort())
+        final NettyChannelBuilder channelBuilder = transportResources.configure(NettyChannelBuilder
+                .forAddress(channelUri.getHost(), channelUri.getPort()))
                 .nameResolverFactory(DNS_NAME_RESOLVER_PROVIDER)
                 .defaultLoadBalancingPolicy(
                         PICK_FIRST_LOAD_BALANCER_PROVIDER.getPolicyName())
@@ -157,33 +288,74 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
 
     @Override
     public void destroy(URI channelUri) {
+        try {
+            destroyAsync(channelUri).get();
+        } catch (InterruptedException e) {
+            log.warn("Channel {} didn't shutdown in time", channelUri);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Termination failures are logged by destroyAsync().
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> destroyAsync(URI channelUri) {
         checkNotNull(channelUri);
 
+        final ManagedChannel channel;
+        final GrpcLoggingInterceptor interceptor;
         channelLocks.get(channelUri).lock();
         try {
-            final ManagedChannel channel = channels.remove(channelUri);
-            if (channel != null) {
-                shutdownNowAndWait(channel, channelUri);
-            }
-            final GrpcLoggingInterceptor interceptor = interceptors.remove(channelUri);
-            if (interceptor != null) {
-                interceptor.close();
-            }
+            channel = channels.remove(channelUri);
+            interceptor = interceptors.remove(channelUri);
         } finally {
             channelLocks.get(channelUri).unlock();
         }
+
+        final CompletableFuture<Void> terminated = new CompletableFuture<>();
+        if (channel == null) {
+            terminated.complete(null);
+        } else {
+            final long deadline = System.nanoTime()
+                    + TimeUnit.SECONDS.toNanos(CHANNEL_TERMINATION_TIMEOUT_SECONDS);
+            try {
+                reaper.execute(() -> {
+                    channel.shutdownNow();
+                    reap(channel, channelUri, deadline, terminated);
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("Controller stopped, shutting down channel {} without waiting", channelUri);
+                channel.shutdownNow();
+                terminated.completeExceptionally(e);
+            }
+        }
+        // Close the call log once the calls cancelled by the shutdown are logged.
+        if (interceptor != null) {
+            terminated.whenComplete((result, error) -> interceptor.close());
+        }
+        return terminated;
     }
 
-    private void shutdownNowAndWait(ManagedChannel channel, URI channelUri) {
+    private void reap(ManagedChannel channel, URI channelUri, long deadline,
+                      CompletableFuture<Void> terminated) {
+        if (channel.isTerminated()) {
+            terminated.complete(null);
+            return;
+        }
+        if (System.nanoTime() - deadline >= 0) {
+            log.error("Channel {} did not terminate properly", channelUri);
+            terminated.completeExceptionally(new TimeoutException(format(
+                    "Channel %s did not terminate in %d seconds",
+                    channelUri, CHANNEL_TERMINATION_TIMEOUT_SECONDS)));
+            return;
+        }
         try {
-            if (!channel.shutdownNow()
-                    .awaitTermination(5, TimeUnit.SECONDS)) {
-                log.error("Channel {} did not terminate properly",
-                          channelUri);
-            }
-        } catch (InterruptedException e) {
-            log.warn("Channel {} didn't shutdown in time", channelUri);
-            Thread.currentThread().interrupt();
+            reaper.schedule(() -> reap(channel, channelUri, deadline, terminated),
+                            REAPER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Controller deactivated, the channel was shut down anyway.
+            log.warn("Controller stopped before channel {} terminated", channelUri);
+            terminated.completeExceptionally(e);
         }
     }
 
@@ -192,4 +364,53 @@ public class GrpcChannelControllerImpl implements GrpcChannelController {
         checkNotNull(channelUri);
         return Optional.ofNullable(channels.get(channelUri));
     }
+
+    /**
+     * Enables or disables the call log of all channels. Messages are written
+     * asynchronously to a temporary file per channel.
+     *
+     * @param enable true to log gRPC messages
+     */
+    public void setEnableMessageLog(boolean enable) {
+        enableMessageLog.set(enable);
+        log.info("gRPC message log {}", enable ? "enabled" : "disabled");
+    }
+
+    /**
+     * Sets the format of the call log of the channels created from now on.
+     *
+     * @param format call log format
+     */
+    public void setMessageLogFormat(GrpcCallLogFormat format) {
+        messageLogFormat = checkNotNull(format);
+    }
+
+    /**
+     * Sets the size limits of the {@link GrpcCallLogFormat#BINARY} capture of the
+     * channels created from now on. Each channel keeps at most
+     * {@code maxSegments} segment files of {@code segmentSize} bytes, the
+     * oldest segment is deleted when a new one is needed.
+     *
+     * @param segmentSize size of a segment file in bytes
+     * @param maxSegments number of segment files kept per channel
+     */
+    public void setMessageCaptureLimits(int segmentSize, int maxSegments) {
+        checkArgument(segmentSize >= 64 * 1024, "Segment size must be at least 64 KB");
+        checkArgument(maxSegments > 0, "At least one segment must be kept");
+        captureSegmentSize = segmentSize;
+        captureMaxSegments = maxSegments;
+    }
+
+    /**
+     * Returns the number of call log entries of the given channel dropped
+     * because the log writer could not keep up.
+     *
+     * @param channelUri channel URI
+     * @return dropped entries, zero if the channel does not exist
+     */
+    public long droppedMessageLogEntries(URI channelUri) {
+        checkNotNull(channelUri);
+        final GrpcLoggingInterceptor interceptor = interceptors.get(channelUri);
+        return interceptor == null ? 0 : interceptor.droppedMessages();
+    }
 }
@@ -2,9 +2,7 @@
 
 package com.github.yinzhouzhou.sdn.grpc.client.ctl;
 
-import static java.lang.String.format;
-import static org.slf4j.LoggerFactory.getLogger;
-
+import com.github.yinzhouzhou.sdn.grpc.client.ctl.GrpcCallLogWriter.Kind;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
@@ -16,20 +14,15 @@ import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
 import io.grpc.protobuf.lite.ProtoLiteUtils;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.net.URI;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 import java.util.StringJoiner;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import org.slf4j.Logger;
 
 /**
  * gRPC client interceptor that logs to file all messages sent and received.
+ * Messages are handed over to a {@link GrpcCallLogWriter}, file I/O and
+ * formatting never run on gRPC threads.
  */
 @SuppressFBWarnings
 final class GrpcLoggingInterceptor implements ClientInterceptor {
@@ -40,70 +33,31 @@ final class GrpcLoggingInterceptor implements ClientInterceptor {
             ProtoLiteUtils.metadataMarshaller(
                 com.google.rpc.Status.getDefaultInstance()));
 
-    private static final Logger LOG = getLogger(GrpcLoggingInterceptor.class);
-
     private final AtomicLong callIdGenerator = new AtomicLong();
-    private final URI channelUri;
     private final AtomicBoolean enabled;
-
-    private FileWriter writer;
+    private final GrpcCallLogWriter logWriter;
 
     GrpcLoggingInterceptor(URI channelUri, AtomicBoolean enabled) {
-        this.channelUri = channelUri;
-        this.enabled = enabled;
+        this(enabled, new GrpcCallLogWriter(channelUri));
     }
 
-    private boolean initWriter() {
-        if (writer != null) {
-            return true;
-        }
-        final String safeChName = channelUri.toString()
-            .replaceAll("[^A-Za-z0-9]", "_").toLowerCase(Locale.ENGLISH);
-        try {
-            final File tmpFile = File.createTempFile(safeChName + "_", ".log");
-            this.writer = new FileWriter(tmpFile);
-            LOG.info("Created gRPC call log file for channel {}: {}",
-                channelUri, tmpFile.getAbsolutePath());
-            return true;
-        } catch (IOException e) {
-            LOG.error("Unable to initialize gRPC call log writer", e);
-        }
-        return false;
+    GrpcLoggingInterceptor(AtomicBoolean enabled, GrpcCallLogWriter logWriter) {
+        this.enabled = enabled;
+        this.logWriter = logWriter;
     }
 
     void close() {
-        synchronized (this) {
-            if (writer == null) {
-                return;
-            }
-            try {
-                LOG.info("Closing log writer for {}...", channelUri);
-                writer.close();
-            } catch (IOException e) {
-                LOG.error("Unable to close gRPC call log writer", e);
-            }
-            writer = null;
-        }
+        logWriter.close();
     }
 
-    private void write(String message) {
-        synchronized (this) {
-            if (!initWriter()) {
-                return;
-            }
-            if (message.length() > 4096) {
-                message = message.substring(0, 256) + "... TRUNCATED!\n\n";
-            }
-            try {
-                writer.write(format(
-                    "*** %s - %s",
-                    new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S")
-                        .format(new Date()),
-                    message));
-            } catch (IOException e) {
-                LOG.error("Unable to write gRPC call log", e);
-            }
-        }
+    /**
+     * Returns the number of log entries dropped because the writer could not
+     * keep up with the call rate.
+     *
+     * @return dropped log entries
+     */
+    long droppedMessages() {
+        return logWriter.droppedEntries();
     }
 
     @Override
@@ -118,11 +72,7 @@ final class GrpcLoggingInterceptor implements ClientInterceptor {
             @Override
             public void sendMessage(ReqT message) {
                 if (enabled.get()) {
-                    write(format(
-                        "%s >> OUTBOUND >> [callId=%s]\n%s\n",
-                        methodDescriptor.getFullMethodName(),
-                        callId,
-                        message.toString()));
+                    logWriter.append(Kind.OUTBOUND, methodDescriptor, callId, message, null);
                 }
                 super.sendMessage(message);
             }
@@ -131,11 +81,7 @@ final class GrpcLoggingInterceptor implements ClientInterceptor {
             public void start(Listener<RespT> responseListener, Metadata headers) {
 
                 if (enabled.get()) {
-                    write(format(
-                        "%s STARTED [callId=%s]\n%s\n\n",
-                        methodDescriptor.getFullMethodName(),
-                        callId,
-                        headers.toString()));
+                    logWriter.append(Kind.STARTED, methodDescriptor, callId, null, headers.toString());
                 }
 
                 Listener<RespT> listener = new ForwardingClientCallListener<RespT>() {
@@ -147,11 +93,7 @@ final class GrpcLoggingInterceptor implements ClientInterceptor {
                     @Override
                     public void onMessage(RespT message) {
                         if (enabled.get()) {
-                            write(format(
-                                "%s << INBOUND << [callId=%s]\n%s\n",
-                                methodDescriptor.getFullMethodName(),
-                                callId,
-                                message.toString()));
+                            logWriter.append(Kind.INBOUND, methodDescriptor, callId, message, null);
                         }
                         super.onMessage(message);
                     }
@@ -159,12 +101,8 @@ final class GrpcLoggingInterceptor implements ClientInterceptor {
                     @Override
                     public void onClose(Status status, Metadata trailers) {
                         if (enabled.get()) {
-                            write(format(
-                                "%s CLOSED [callId=%s]\n%s\n%s\n\n",
-                                methodDescriptor.getFullMethodName(),
-                                callId,
-                                status.toString(),
-                                parseTrailers(trailers)));
+                            logWriter.append(Kind.CLOSED, methodDescriptor, callId, status,
+                                             parseTrailers(trailers));
                         }
                         super.onClose(status, trailers);
                     }
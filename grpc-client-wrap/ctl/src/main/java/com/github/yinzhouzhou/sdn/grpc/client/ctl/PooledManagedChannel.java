@@ -0,0 +1,265 @@
+package com.github.yinzhouzhou.sdn.grpc.client.ctl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Managed channel spreading calls over a fixed set of sub-channels to the same
+ * target. Each sub-channel owns its own HTTP/2 connection, so a pool of N
+ * channels lifts the per-connection MAX_CONCURRENT_STREAMS limit and lets the
+ * traffic of one device use N event loops.
+ *
+ * <p>Connectivity state is aggregated over the sub-channels: the pool is READY
+ * as soon as one sub-channel is READY, and it is SHUTDOWN only when all of
+ * them are.
+ */
+final class PooledManagedChannel extends ManagedChannel {
+
+    /**
+     * How the pool picks the sub-channel of a new call.
+     */
+    enum Policy {
+        /**
+         * Cycle through the sub-channels.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Pick the sub-channel with the fewest calls in flight.
+         */
+        LEAST_OUTSTANDING;
+
+        static Policy fromString(String value) {
+            return valueOf(value.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private final ManagedChannel[] channels;
+    private final Policy policy;
+    private final AtomicIntegerArray outstanding;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    PooledManagedChannel(List<ManagedChannel> channels, Policy policy) {
+        checkArgument(!channels.isEmpty(), "Channel pool must not be empty");
+        this.channels = channels.toArray(new ManagedChannel[0]);
+        this.policy = policy;
+        this.outstanding = new AtomicIntegerArray(this.channels.length);
+    }
+
+    int size() {
+        return channels.length;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+        MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+        if (policy == Policy.ROUND_ROBIN) {
+            return channels[Math.floorMod(nextIndex.getAndIncrement(), channels.length)]
+                .newCall(methodDescriptor, callOptions);
+        }
+        final int index = leastOutstandingIndex();
+        return new OutstandingTrackingCall<>(
+            channels[index].newCall(methodDescriptor, callOptions), index);
+    }
+
+    private int leastOutstandingIndex() {
+        // Start from a rotating offset so that ties do not always go to the
+        // first sub-channel.
+        final int start = Math.floorMod(nextIndex.getAndIncrement(), channels.length);
+        int best = start;
+        int bestCount = outstanding.get(start);
+        for (int i = 1; i < channels.length && bestCount > 0; i++) {
+            final int index = (start + i) % channels.length;
+            final int count = outstanding.get(index);
+            if (count < bestCount) {
+                best = index;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String authority() {
+        return channels[0].authority();
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            final long remaining = deadline - System.nanoTime();
+            if (!channel.awaitTermination(Math.max(remaining, 0), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        boolean connecting = false;
+        boolean idle = false;
+        boolean failure = false;
+        for (ManagedChannel channel : channels) {
+            switch (channel.getState(requestConnection)) {
+                case READY:
+                    return ConnectivityState.READY;
+                case CONNECTING:
+                    connecting = true;
+                    break;
+                case IDLE:
+                    idle = true;
+                    break;
+                case TRANSIENT_FAILURE:
+                    failure = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (connecting) {
+            return ConnectivityState.CONNECTING;
+        }
+        if (idle) {
+            return ConnectivityState.IDLE;
+        }
+        if (failure) {
+            return ConnectivityState.TRANSIENT_FAILURE;
+        }
+        return ConnectivityState.SHUTDOWN;
+    }
+
+    @Override
+    public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+        if (getState(false) != source) {
+            callback.run();
+            return;
+        }
+        // Watch every sub-channel, the first change of the aggregated state
+        // fires the callback exactly once.
+        final AtomicBoolean fired = new AtomicBoolean(false);
+        for (ManagedChannel channel : channels) {
+            watch(channel, source, callback, fired);
+        }
+    }
+
+    private void watch(ManagedChannel channel, ConnectivityState source,
+                       Runnable callback, AtomicBoolean fired) {
+        final ConnectivityState channelState = channel.getState(false);
+        channel.notifyWhenStateChanged(channelState, () -> {
+            if (fired.get()) {
+                return;
+            }
+            if (getState(false) != source) {
+                if (fired.compareAndSet(false, true)) {
+                    callback.run();
+                }
+            } else if (!channel.isShutdown()) {
+                watch(channel, source, callback, fired);
+            }
+        });
+    }
+
+    @Override
+    public void resetConnectBackoff() {
+        for (ManagedChannel channel : channels) {
+            channel.resetConnectBackoff();
+        }
+    }
+
+    @Override
+    public void enterIdle() {
+        for (ManagedChannel channel : channels) {
+            channel.enterIdle();
+        }
+    }
+
+    /**
+     * Counts the call as outstanding on its sub-channel from start to close.
+     */
+    private final class OutstandingTrackingCall<ReqT, RespT>
+        extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+
+        private final int index;
+
+        OutstandingTrackingCall(ClientCall<ReqT, RespT> delegate, int index) {
+            super(delegate);
+            this.index = index;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            outstanding.incrementAndGet(index);
+            final AtomicBoolean closed = new AtomicBoolean(false);
+            try {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                    responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        if (closed.compareAndSet(false, true)) {
+                            outstanding.decrementAndGet(index);
+                        }
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                if (closed.compareAndSet(false, true)) {
+                    outstanding.decrementAndGet(index);
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -44,7 +44,8 @@ public abstract class AbstractGrpcHandshaker
         super(channelController, clientController, deviceId);
     }
 
-    private static final Striped<Lock> DEVICE_LOCKS = Striped.lock(10);
+    // Sized for parallel connects, see BatchHandshakerService.
+    private static final Striped<Lock> DEVICE_LOCKS = Striped.lock(64);
 
     @Override
     public boolean connect() {
@@ -99,12 +100,14 @@ public abstract class AbstractGrpcHandshaker
     public void disconnect() {
         final DeviceId deviceId = getDeviceId();
         // This removes any clients and channels associated with this device ID.
+        // The channel is shut down in the background, so that a disconnect
+        // does not hold the device lock until the channel terminates.
         DEVICE_LOCKS.get(deviceId).lock();
         try {
             final URI existingChannelUri = CHANNEL_URIS.remove(deviceId);
             clientController.remove(deviceId);
             if (existingChannelUri != null) {
-                channelController.destroy(existingChannelUri);
+                channelController.destroyAsync(existingChannelUri);
             }
         } finally {
             DEVICE_LOCKS.get(deviceId).unlock();
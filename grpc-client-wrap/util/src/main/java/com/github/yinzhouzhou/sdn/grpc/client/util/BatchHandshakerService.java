@@ -0,0 +1,353 @@
+package com.github.yinzhouzhou.sdn.grpc.client.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceConnect;
+import com.github.yinzhouzhou.sdn.grpc.client.api.device.DeviceId;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connects and disconnects many devices in parallel, e.g. the whole fleet at
+ * controller startup.
+ *
+ * <p>Each device is handled by the {@link DeviceConnect} behaviour returned by
+ * the factory, typically an {@link AbstractGrpcHandshaker}. Operations run on
+ * the given executor with at most {@code maxConcurrency} of them in flight;
+ * submitting a batch never blocks the caller. Results are reported per device
+ * as futures, and as a {@link Report} when the whole batch is done.
+ */
+public class BatchHandshakerService {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Function<DeviceId, ? extends DeviceConnect> handshakerFactory;
+    private final Executor executor;
+    private final int maxConcurrency;
+
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    /**
+     * Creates a new service.
+     *
+     * @param handshakerFactory returns the connect behaviour of a device
+     * @param executor          executor running the operations, not a direct
+     *                          executor
+     * @param maxConcurrency    maximum number of operations in flight
+     */
+    public BatchHandshakerService(Function<DeviceId, ? extends DeviceConnect> handshakerFactory,
+                                  Executor executor, int maxConcurrency) {
+        checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        this.handshakerFactory = checkNotNull(handshakerFactory);
+        this.executor = checkNotNull(executor);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public BatchHandshakerService(Function<DeviceId, ? extends DeviceConnect> handshakerFactory,
+                                  Executor executor) {
+        this(handshakerFactory, executor, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Connects the given devices. A device is connected successfully if
+     * {@link DeviceConnect#connect()} returns true; its future completes
+     * exceptionally if connect throws.
+     *
+     * @param deviceIds devices to connect
+     * @return the batch, with the result of each device
+     */
+    public Batch connectAll(Collection<DeviceId> deviceIds) {
+        return submit(deviceIds, true);
+    }
+
+    /**
+     * Disconnects the given devices. The future of a device is true once
+     * {@link DeviceConnect#disconnect()} has returned.
+     *
+     * @param deviceIds devices to disconnect
+     * @return the batch, with the result of each device
+     */
+    public Batch disconnectAll(Collection<DeviceId> deviceIds) {
+        return submit(deviceIds, false);
+    }
+
+    private Batch submit(Collection<DeviceId> deviceIds, boolean connect) {
+        checkNotNull(deviceIds);
+        final Batch batch = new Batch(connect, deviceIds.size());
+        for (DeviceId deviceId : deviceIds) {
+            final CompletableFuture<Boolean> result = new CompletableFuture<>();
+            if (batch.results.putIfAbsent(deviceId, result) == null) {
+                pending.add(new Task(batch, deviceId, result));
+            }
+        }
+        batch.watchCompletion();
+        dispatch();
+        return batch;
+    }
+
+    private void dispatch() {
+        while (!pending.isEmpty()) {
+            final int current = inFlight.get();
+            if (current >= maxConcurrency) {
+                // The next completion dispatches the remaining tasks.
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final Task task = pending.poll();
+            if (task == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        inFlight.decrementAndGet();
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                if (task.batch.connect) {
+                    connectFailures.increment();
+                }
+                task.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of devices connected successfully by this service.
+     *
+     * @return connected devices
+     */
+    public long connectedCount() {
+        return connected.sum();
+    }
+
+    /**
+     * Returns the number of devices this service failed to connect.
+     *
+     * @return failed connections
+     */
+    public long connectFailureCount() {
+        return connectFailures.sum();
+    }
+
+    /**
+     * Returns the number of devices disconnected by this service.
+     *
+     * @return disconnected devices
+     */
+    public long disconnectedCount() {
+        return disconnected.sum();
+    }
+
+    /**
+     * Returns the number of operations running.
+     *
+     * @return operations in flight
+     */
+    public int inFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the number of operations waiting for a slot.
+     *
+     * @return pending operations
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private final class Task {
+
+        private final Batch batch;
+        private final DeviceId deviceId;
+        private final CompletableFuture<Boolean> result;
+
+        Task(Batch batch, DeviceId deviceId, CompletableFuture<Boolean> result) {
+            this.batch = batch;
+            this.deviceId = deviceId;
+            this.result = result;
+        }
+
+        @SuppressWarnings("IllegalCatch")
+        void run() {
+            final long start = System.nanoTime();
+            try {
+                final DeviceConnect handshaker = handshakerFactory.apply(deviceId);
+                if (batch.connect) {
+                    final boolean success = handshaker.connect();
+                    (success ? connected : connectFailures).increment();
+                    batch.record(start, success);
+                    result.complete(success);
+                } else {
+                    handshaker.disconnect();
+                    disconnected.increment();
+                    batch.record(start, true);
+                    result.complete(true);
+                }
+            } catch (Throwable e) {
+                // Errors too, or the device would never complete its batch.
+                if (batch.connect) {
+                    connectFailures.increment();
+                }
+                log.warn("Unable to {} {}: {}", batch.connect ? "connect" : "disconnect",
+                         deviceId, e.getMessage());
+                batch.record(start, false);
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Devices submitted together to {@link #connectAll(Collection)} or
+     * {@link #disconnectAll(Collection)}.
+     */
+    public static final class Batch {
+
+        private final boolean connect;
+        private final long startNanos = System.nanoTime();
+        private final Map<DeviceId, CompletableFuture<Boolean>> results;
+        private final CompletableFuture<Report> completion = new CompletableFuture<>();
+
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Batch(boolean connect, int size) {
+            this.connect = connect;
+            this.results = new LinkedHashMap<>(Math.max(16, size * 4 / 3 + 1));
+        }
+
+        private void record(long start, boolean success) {
+            final long elapsed = System.nanoTime() - start;
+            if (success) {
+                succeeded.incrementAndGet();
+            }
+            totalNanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+        }
+
+        private void watchCompletion() {
+            CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> completion.complete(new Report(
+                    results.size(), succeeded.get(), results.size() - succeeded.get(),
+                    System.nanoTime() - startNanos, totalNanos.get(), maxNanos.get())));
+        }
+
+        /**
+         * Returns the future result of each device, in submission order.
+         *
+         * @return results by device
+         */
+        public Map<DeviceId, CompletableFuture<Boolean>> results() {
+            return Collections.unmodifiableMap(results);
+        }
+
+        /**
+         * Returns a future completed when all devices of the batch are done.
+         *
+         * @return future report
+         */
+        public CompletableFuture<Report> completion() {
+            return completion;
+        }
+    }
+
+    /**
+     * Timing and outcome of a completed batch.
+     */
+    public static final class Report {
+
+        private final int devices;
+        private final int succeeded;
+        private final int failed;
+        private final long elapsedNanos;
+        private final long totalDeviceNanos;
+        private final long maxDeviceNanos;
+
+        private Report(int devices, int succeeded, int failed, long elapsedNanos,
+                       long totalDeviceNanos, long maxDeviceNanos) {
+            this.devices = devices;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.totalDeviceNanos = totalDeviceNanos;
+            this.maxDeviceNanos = maxDeviceNanos;
+        }
+
+        public int devices() {
+            return devices;
+        }
+
+        public int succeeded() {
+            return succeeded;
+        }
+
+        public int failed() {
+            return failed;
+        }
+
+        /**
+         * Returns the time from submission to the completion of the last device.
+         *
+         * @return elapsed time in milliseconds
+         */
+        public long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        /**
+         * Returns the mean time spent on one device, excluding queueing.
+         *
+         * @return mean time in microseconds
+         */
+        public long meanDeviceMicros() {
+            return devices == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalDeviceNanos / devices);
+        }
+
+        /**
+         * Returns the longest time spent on one device, excluding queueing.
+         *
+         * @return max time in microseconds
+         */
+        public long maxDeviceMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxDeviceNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d devices, %d succeeded, %d failed in %d ms (mean %d us, max %d us)",
+                                 devices, succeeded, failed, elapsedMillis(),
+                                 meanDeviceMicros(), maxDeviceMicros());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.yinzhouzhou.sdn.grpc.client.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponential backoff with full jitter between reconnect attempts.
+ *
+ * <p>The delay before attempt {@code n} (counted from 0) is drawn uniformly
+ * between 0 and {@code min(maxDelay, initialDelay * multiplier^n)}, so clients
+ * that lost their connection at the same time spread their attempts instead of
+ * retrying in waves.
+ */
+public final class ReconnectPolicy {
+
+    private static final ReconnectPolicy DEFAULT = builder().build();
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+
+    private ReconnectPolicy(Builder builder) {
+        this.initialDelayMillis = builder.initialDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.multiplier = builder.multiplier;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Policy with the default settings: 1 second initial delay, doubled up to
+     * 60 seconds.
+     *
+     * @return default policy
+     */
+    public static ReconnectPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    /**
+     * Upper bound of the delay before an attempt.
+     *
+     * @param attempt attempt number, 0 for the first one
+     * @return bound in milliseconds
+     */
+    public long backoffMillis(int attempt) {
+        final double backoff = initialDelayMillis * Math.pow(multiplier, attempt);
+        return backoff >= maxDelayMillis ? maxDelayMillis : (long) backoff;
+    }
+
+    /**
+     * Random delay before an attempt.
+     *
+     * @param attempt attempt number, 0 for the first one
+     * @return delay in milliseconds
+     */
+    public long delayMillis(int attempt) {
+        return ThreadLocalRandom.current().nextLong(backoffMillis(attempt) + 1);
+    }
+
+    public long initialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public long maxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public double multiplier() {
+        return multiplier;
+    }
+
+    @Override
+    public String toString() {
+        return "ReconnectPolicy{initialDelayMillis=" + initialDelayMillis + ", maxDelayMillis=" + maxDelayMillis
+            + ", multiplier=" + multiplier + '}';
+    }
+
+    /**
+     * Builder of {@link ReconnectPolicy}.
+     */
+    public static final class Builder {
+
+        private long initialDelayMillis = TimeUnit.SECONDS.toMillis(1);
+        private long maxDelayMillis = TimeUnit.SECONDS.toMillis(60);
+        private double multiplier = 2.0;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the bound of the delay before the first attempt, 1 second by default.
+         *
+         * @param delay delay
+         * @param unit unit of the delay
+         * @return this builder
+         */
+        public Builder initialDelay(long delay, TimeUnit unit) {
+            checkArgument(delay > 0, "initialDelay must be positive");
+            this.initialDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Sets the largest bound of the delay, 60 seconds by default.
+         *
+         * @param delay delay
+         * @param unit unit of the delay
+         * @return this builder
+         */
+        public Builder maxDelay(long delay, TimeUnit unit) {
+            checkArgument(delay > 0, "maxDelay must be positive");
+            this.maxDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Sets the growth of the bound after each failed attempt, 2 by default.
+         *
+         * @param multiplier multiplier, at least 1
+         * @return this builder
+         */
+        public Builder multiplier(double multiplier) {
+            checkArgument(multiplier >= 1, "multiplier must be at least 1");
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        public ReconnectPolicy build() {
+            checkArgument(initialDelayMillis <= maxDelayMillis, "initialDelay must not exceed maxDelay");
+            return new ReconnectPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.yinzhouzhou.sdn.grpc.client.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the reconnects driven by a {@link ReconnectPolicy}, shared by
+ * all the connections of a controller.
+ */
+public final class ReconnectStats {
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder totalReconnectNanos = new LongAdder();
+    private final LongAccumulator maxReconnectNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a reconnect attempt.
+     */
+    public void recordAttempt() {
+        attempts.increment();
+    }
+
+    /**
+     * Records a connection back in service.
+     *
+     * @param nanos time from the loss of the connection to its recovery
+     */
+    public void recordReconnect(long nanos) {
+        reconnects.increment();
+        totalReconnectNanos.add(nanos);
+        maxReconnectNanos.accumulate(nanos);
+    }
+
+    /**
+     * Number of reconnect attempts, successful or not.
+     *
+     * @return attempts
+     */
+    public long attempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * Number of connections back in service.
+     *
+     * @return reconnects
+     */
+    public long reconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * Mean time from the loss of a connection to its recovery.
+     *
+     * @return mean time in milliseconds, 0 before the first reconnect
+     */
+    public long meanReconnectMillis() {
+        final long count = reconnects.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalReconnectNanos.sum() / count);
+    }
+
+    /**
+     * Longest time from the loss of a connection to its recovery.
+     *
+     * @return time in milliseconds
+     */
+    public long maxReconnectMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxReconnectNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "ReconnectStats{attempts=" + attempts() + ", reconnects=" + reconnects()
+            + ", meanReconnectMillis=" + meanReconnectMillis() + ", maxReconnectMillis=" + maxReconnectMillis() + '}';
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.yinzhouzhou.sdn.grpc.client;
 
+import com.github.yinzhouzhou.sdn.grpc.utils.transport.GrpcTransportResources;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
@@ -25,11 +26,26 @@ public class DefaultGRpcClient {
     private String grpcServerHost;
     private Integer grpcServerPort;
 
+    private final GrpcTransportResources transportResources;
+
     private ManagedChannel channel;
 
     public DefaultGRpcClient(String grpcServerHost, Integer grpcServerPort) {
+        this(grpcServerHost, grpcServerPort, GrpcTransportResources.shared());
+    }
+
+    /**
+     * 创建grpc-client，通道的I/O运行在给定的共享event loop上.
+     *
+     * @param grpcServerHost 服务端地址.
+     * @param grpcServerPort 服务端端口.
+     * @param transportResources 共享的event loop和线程池，client不负责关闭.
+     */
+    public DefaultGRpcClient(String grpcServerHost, Integer grpcServerPort,
+                             GrpcTransportResources transportResources) {
         this.grpcServerHost = grpcServerHost;
         this.grpcServerPort = grpcServerPort;
+        this.transportResources = transportResources;
     }
 
     /**
@@ -37,7 +53,8 @@ public class DefaultGRpcClient {
      *
      */
     public void openPlainTextChannel() {
-        ManagedChannelBuilder channelBuilder = ManagedChannelBuilder.forAddress(grpcServerHost, grpcServerPort)
+        ManagedChannelBuilder channelBuilder = transportResources.configure(
+            NettyChannelBuilder.forAddress(grpcServerHost, grpcServerPort))
             .usePlaintext();
         this.channel = channelBuilder.build();
         logger.info("grpc-client connect started without ssl, message is plain text.");
@@ -48,7 +65,8 @@ public class DefaultGRpcClient {
      *
      */
     public void openPlainTextChannel(long keepAliveTime) {
-        ManagedChannelBuilder channelBuilder = ManagedChannelBuilder.forAddress(grpcServerHost, grpcServerPort)
+        ManagedChannelBuilder channelBuilder = transportResources.configure(
+            NettyChannelBuilder.forAddress(grpcServerHost, grpcServerPort))
             .usePlaintext();
         channelBuilder.keepAliveTime(keepAliveTime, TimeUnit.MILLISECONDS);
         this.channel = channelBuilder.build();
@@ -109,8 +127,8 @@ public class DefaultGRpcClient {
      * @param sslContext ssl Context.
      */
     public void openChannelWithSsl(String authority, SslContext sslContext) {
-        NettyChannelBuilder channelBuilder = NettyChannelBuilder
-            .forAddress(grpcServerHost, grpcServerPort).overrideAuthority(authority);
+        NettyChannelBuilder channelBuilder = transportResources.configure(NettyChannelBuilder
+            .forAddress(grpcServerHost, grpcServerPort)).overrideAuthority(authority);
         channelBuilder.sslContext(sslContext);
         this.channel = channelBuilder.build();
         logger.info("grpc-client connect started with ssl-context.");
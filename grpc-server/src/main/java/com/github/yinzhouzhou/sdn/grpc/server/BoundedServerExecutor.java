@@ -0,0 +1,122 @@
+package com.github.yinzhouzhou.sdn.grpc.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界的服务端线程池及其监控指标.
+ *
+ * <p>线程数固定。队列长度用于准入控制：排队任务达到上限时拒绝新的调用，调用方收到
+ * RESOURCE_EXHAUSTED；已接受的调用的后续回调总是入队，不会丢失，也不会在网络I/O线程上执行。
+ */
+public final class BoundedServerExecutor implements Executor {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder admittedCalls = new LongAdder();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    /**
+     * 创建线程池.
+     *
+     * @param name 线程池名称，用于线程名.
+     * @param poolSize 线程数.
+     * @param queueCapacity 等待队列长度.
+     */
+    public BoundedServerExecutor(String name, int poolSize, int queueCapacity) {
+        checkArgument(poolSize > 0, "poolSize must be positive");
+        checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(
+            poolSize, poolSize, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+    }
+
+    /**
+     * 执行已接受调用的任务，不受队列上限限制.
+     *
+     * @param command task
+     */
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * 新调用的准入检查：排队任务未达到上限时接受.
+     *
+     * @return true if a new call may be admitted
+     */
+    boolean tryAdmit() {
+        if (executor.getQueue().size() >= queueCapacity) {
+            rejectedCalls.increment();
+            return false;
+        }
+        admittedCalls.increment();
+        return true;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * 当前排队等待的任务数.
+     *
+     * @return queue depth
+     */
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    public int activeThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int poolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    public long admittedCalls() {
+        return admittedCalls.sum();
+    }
+
+    public long rejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * 启动以来被拒绝的调用占比.
+     *
+     * @return rejection rate between 0 and 1
+     */
+    public double rejectionRate() {
+        final long rejected = rejectedCalls.sum();
+        final long total = rejected + admittedCalls.sum();
+        return total == 0 ? 0 : (double) rejected / total;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{poolSize=%d, active=%d, queue=%d/%d, admitted=%d, rejected=%d}",
+            name, poolSize(), activeThreads(), queueDepth(), queueCapacity,
+            admittedCalls(), rejectedCalls());
+    }
+}
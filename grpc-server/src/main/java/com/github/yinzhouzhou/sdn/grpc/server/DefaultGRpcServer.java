@@ -1,5 +1,10 @@
 package com.github.yinzhouzhou.sdn.grpc.server;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.github.yinzhouzhou.sdn.grpc.utils.json.ContentNegotiation;
+import com.github.yinzhouzhou.sdn.grpc.utils.transport.GrpcTransportResources;
 import io.grpc.BindableService;
 import io.grpc.Server;
 import io.grpc.ServerInterceptor;
@@ -12,8 +17,12 @@ import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLException;
 import org.slf4j.Logger;
@@ -28,25 +37,141 @@ public class DefaultGRpcServer {
 
     private final String host;
     private final Integer bindPort;
+    private final GrpcTransportResources transportResources;
 
+    private ServerExecutorMode executorMode = ServerExecutorMode.DEFAULT;
     private int threadPoolSize = Runtime.getRuntime().availableProcessors() * 4;
     private int threadPoolQueueSize = 10000;
+    private BoundedServerExecutor executor;
+    private boolean contentNegotiation;
+
+    // messageKey -> {线程数, 等待队列长度}
+    private final Map<String, int[]> handlerThreadPools = new LinkedHashMap<>();
+    // 服务名 -> messageKey，注册处理类时记录
+    private final Map<String, String> handlerServices = new ConcurrentHashMap<>();
+    // messageKey -> 独立线程池
+    private final Map<String, BoundedServerExecutor> handlerExecutors = new ConcurrentHashMap<>();
 
     public DefaultGRpcServer(String host, Integer bindPort) {
-        this.host = host;
-        this.bindPort = bindPort;
+        this(host, bindPort, GrpcTransportResources.shared());
     }
 
     public DefaultGRpcServer(Integer bindPort) {
-        this.host = "0.0.0.0";
+        this("0.0.0.0", bindPort);
+    }
+
+    /**
+     * 创建一个grpc-server实例，I/O运行在给定的共享event loop上.
+     *
+     * @param host 监听地址.
+     * @param bindPort 监听端口.
+     * @param transportResources 共享的event loop和线程池，server不负责关闭.
+     */
+    public DefaultGRpcServer(String host, Integer bindPort, GrpcTransportResources transportResources) {
+        this.host = host;
         this.bindPort = bindPort;
+        this.transportResources = transportResources;
+    }
+
+    /**
+     * 设置处理调用的线程模式，需在 initialize 之前调用.
+     *
+     * @param executorMode 线程模式.
+     */
+    public void setExecutorMode(ServerExecutorMode executorMode) {
+        this.executorMode = executorMode;
+    }
+
+    /**
+     * 设置 BOUNDED 模式下线程池的大小和等待队列长度，需在 initialize 之前调用.
+     *
+     * @param threadPoolSize 线程数，默认为CPU核数的4倍.
+     * @param threadPoolQueueSize 等待队列长度，默认10000.
+     */
+    public void setThreadPool(int threadPoolSize, int threadPoolQueueSize) {
+        this.threadPoolSize = threadPoolSize;
+        this.threadPoolQueueSize = threadPoolQueueSize;
+    }
+
+    /**
+     * 为某个处理类配置独立的线程池（隔离舱），需在 initialize 之前调用.
+     *
+     * <p>该处理类的调用只在自己的线程池中执行，线程数即其并发上限，排队达到上限时
+     * 新调用以 RESOURCE_EXHAUSTED 拒绝，不会占用其他处理类的线程。其余处理类按
+     * {@link #setExecutorMode(ServerExecutorMode)} 处理。
+     *
+     * @param messageKey 处理类的 {@link GrpcMessageHandler#messageKey()}.
+     * @param threadPoolSize 线程数.
+     * @param threadPoolQueueSize 等待队列长度.
+     */
+    public void setHandlerThreadPool(String messageKey, int threadPoolSize, int threadPoolQueueSize) {
+        checkNotNull(messageKey, "messageKey");
+        checkArgument(threadPoolSize > 0, "threadPoolSize must be positive");
+        checkArgument(threadPoolQueueSize > 0, "threadPoolQueueSize must be positive");
+        handlerThreadPools.put(messageKey, new int[] {threadPoolSize, threadPoolQueueSize});
+    }
+
+    /**
+     * 开启JSON/proto内容协商，需在注册处理类之前调用.
+     *
+     * <p>开启后同一个处理类按请求头 {@code x-content-subtype} 逐个调用选择编码：缺省或
+     * {@code proto} 为protobuf二进制，{@code json} 为JSON，便于调试客户端使用JSON访问，
+     * 生产流量仍走二进制编码。协商的方法在拦截器中看到的消息为 {@link java.io.InputStream}.
+     *
+     * @param contentNegotiation 是否开启，默认关闭.
+     * @see ContentNegotiation
+     */
+    public void setContentNegotiation(boolean contentNegotiation) {
+        this.contentNegotiation = contentNegotiation;
     }
 
     public void initialize() {
         serverBuilder.keepAliveTime(3000, TimeUnit.MILLISECONDS);
 //            .withOption(ChannelOption.TCP_NODELAY, true);
-//            .executor(executor);
-        logger.info("Server started, host {} listening on {}", host, bindPort);
+        switch (executorMode) {
+            case BOUNDED:
+                executor = new BoundedServerExecutor("grpc-server-" + bindPort, threadPoolSize, threadPoolQueueSize);
+                serverBuilder.directExecutor();
+                break;
+            case DIRECT:
+                serverBuilder.directExecutor();
+                break;
+            default:
+                break;
+        }
+        for (Map.Entry<String, int[]> pool : handlerThreadPools.entrySet()) {
+            handlerExecutors.put(pool.getKey(), new BoundedServerExecutor(
+                "grpc-server-" + bindPort + "-" + pool.getKey(), pool.getValue()[0], pool.getValue()[1]));
+        }
+        if (executor != null || !handlerExecutors.isEmpty()) {
+            // 最后注册的拦截器最先执行.
+            serverBuilder.intercept(new ExecutorDispatchInterceptor(this::handlerExecutor, executor));
+        }
+        logger.info("Server started, host {} listening on {}, executor mode {}, handler thread pools {}",
+            host, bindPort, executorMode, handlerExecutors.keySet());
+    }
+
+    private BoundedServerExecutor handlerExecutor(String serviceName) {
+        String messageKey = handlerServices.get(serviceName);
+        return messageKey == null ? null : handlerExecutors.get(messageKey);
+    }
+
+    /**
+     * BOUNDED 模式下线程池的监控指标（队列深度、拒绝率等）.
+     *
+     * @return 线程池，其他模式下为空.
+     */
+    public Optional<BoundedServerExecutor> getExecutor() {
+        return Optional.ofNullable(executor);
+    }
+
+    /**
+     * 各处理类独立线程池的监控指标.
+     *
+     * @return messageKey 到线程池的映射.
+     */
+    public Map<String, BoundedServerExecutor> getHandlerExecutors() {
+        return Collections.unmodifiableMap(handlerExecutors);
     }
 
     /**
@@ -85,13 +210,13 @@ public class DefaultGRpcServer {
     public void buildGRpcServer(SslContext sslContext,
                                 Map<String, GrpcMessageHandler> grpcServiceBeanMap,
                                 List<ServerInterceptor> interceptors) {
-        NettyServerBuilder nettyServerBuilder = NettyServerBuilder
-            .forAddress(new InetSocketAddress(host, bindPort));
+        NettyServerBuilder nettyServerBuilder = transportResources.configure(NettyServerBuilder
+            .forAddress(new InetSocketAddress(host, bindPort)));
         if (sslContext != null) {
             nettyServerBuilder.sslContext(sslContext);
         }
         for (GrpcMessageHandler handler : grpcServiceBeanMap.values()) {
-            nettyServerBuilder.addService(handler);
+            nettyServerBuilder.addService(bindMessageHandler(handler));
             logger.info("{} is registered.", handler.getClass().getSimpleName());
         }
         for (ServerInterceptor serverInterceptor : interceptors) {
@@ -134,7 +259,15 @@ public class DefaultGRpcServer {
 
     public void addMessageHandler(GrpcMessageHandler messageHandler) {
         logger.info("Bind handler {} into gRPC server {}", messageHandler.getClass().getSimpleName(), bindPort);
-        addBindableService(messageHandler);
+        serverBuilder.addService(bindMessageHandler(messageHandler));
+    }
+
+    private ServerServiceDefinition bindMessageHandler(GrpcMessageHandler messageHandler) {
+        ServerServiceDefinition definition = messageHandler.bindService();
+        if (messageHandler.messageKey() != null) {
+            handlerServices.put(definition.getServiceDescriptor().getName(), messageHandler.messageKey());
+        }
+        return contentNegotiation ? ContentNegotiation.negotiating(definition) : definition;
     }
 
     public void addBindableService(BindableService bean) {
@@ -171,5 +304,11 @@ public class DefaultGRpcServer {
             server.shutdownNow();
             server = null;
         }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        handlerExecutors.values().forEach(BoundedServerExecutor::shutdown);
+        handlerExecutors.clear();
     }
 }
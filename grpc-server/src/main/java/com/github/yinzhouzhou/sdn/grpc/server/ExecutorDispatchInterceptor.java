@@ -0,0 +1,147 @@
+package com.github.yinzhouzhou.sdn.grpc.server;
+
+import com.github.yinzhouzhou.sdn.grpc.utils.concurrent.SerializingExecutor;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 将调用从网络I/O线程转移到有界线程池的拦截器.
+ *
+ * <p>线程池按调用的服务名选择：配置了独立线程池（隔离舱）的处理类使用自己的线程池，
+ * 其余调用使用默认线程池；没有默认线程池时，其余调用留在当前线程处理。
+ *
+ * <p>每个调用的回调通过 {@link SerializingExecutor} 按顺序执行。调用开始时如果线程池
+ * 排队任务已达上限，直接以 RESOURCE_EXHAUSTED 关闭调用，不进入后续拦截器和处理类。
+ * 必须作为最外层拦截器注册（即最后注册）。
+ */
+final class ExecutorDispatchInterceptor implements ServerInterceptor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorDispatchInterceptor.class);
+
+    private final Function<String, BoundedServerExecutor> serviceExecutors;
+    private final BoundedServerExecutor defaultExecutor;
+
+    /**
+     * 按服务名分发调用.
+     *
+     * @param serviceExecutors 返回服务的独立线程池，没有则返回null.
+     * @param defaultExecutor 其余调用使用的线程池，为null时不切换线程.
+     */
+    ExecutorDispatchInterceptor(Function<String, BoundedServerExecutor> serviceExecutors,
+                                BoundedServerExecutor defaultExecutor) {
+        this.serviceExecutors = serviceExecutors;
+        this.defaultExecutor = defaultExecutor;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+        ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        BoundedServerExecutor executor = serviceExecutors.apply(call.getMethodDescriptor().getServiceName());
+        if (executor == null) {
+            executor = defaultExecutor;
+        }
+        if (executor == null) {
+            return next.startCall(call, headers);
+        }
+        return dispatch(executor, call, headers, next);
+    }
+
+    static <ReqT, RespT> ServerCall.Listener<ReqT> dispatch(
+        BoundedServerExecutor executor, ServerCall<ReqT, RespT> call,
+        Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        if (!executor.tryAdmit()) {
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription(
+                "Server executor " + executor.name() + " is saturated"), new Metadata());
+            return new ServerCall.Listener<ReqT>() { };
+        }
+        final Context context = Context.current();
+        final SerializingExecutor callExecutor = new SerializingExecutor(executor);
+        final DispatchingListener<ReqT> listener = new DispatchingListener<>(call, callExecutor, context);
+        callExecutor.execute(context.wrap(() -> {
+            try {
+                listener.delegate = next.startCall(call, headers);
+            } catch (RuntimeException e) {
+                LOG.warn("Exception while starting call {}", call.getMethodDescriptor().getFullMethodName(), e);
+                closeQuietly(call, Status.fromThrowable(e));
+            }
+        }));
+        return listener;
+    }
+
+    private static void closeQuietly(ServerCall<?, ?> call, Status status) {
+        try {
+            call.close(status, new Metadata());
+        } catch (IllegalStateException e) {
+            // Already closed by the handler.
+        }
+    }
+
+    /**
+     * Runs the callbacks of the call listener on the call executor, in order.
+     * The delegate is written by the start task and read by the later tasks,
+     * all of them serialized by the call executor.
+     */
+    private static final class DispatchingListener<ReqT> extends ServerCall.Listener<ReqT> {
+
+        private final ServerCall<ReqT, ?> call;
+        private final SerializingExecutor callExecutor;
+        private final Context context;
+        private ServerCall.Listener<ReqT> delegate;
+
+        DispatchingListener(ServerCall<ReqT, ?> call, SerializingExecutor callExecutor, Context context) {
+            this.call = call;
+            this.callExecutor = callExecutor;
+            this.context = context;
+        }
+
+        private void dispatch(Consumer<ServerCall.Listener<ReqT>> callback) {
+            callExecutor.execute(context.wrap(() -> {
+                if (delegate == null) {
+                    // The call failed to start.
+                    return;
+                }
+                try {
+                    callback.accept(delegate);
+                } catch (RuntimeException e) {
+                    LOG.warn("Exception while processing call {}",
+                             call.getMethodDescriptor().getFullMethodName(), e);
+                    closeQuietly(call, Status.UNKNOWN.withDescription("Application error processing RPC")
+                        .withCause(e));
+                }
+            }));
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            dispatch(listener -> listener.onMessage(message));
+        }
+
+        @Override
+        public void onHalfClose() {
+            dispatch(ServerCall.Listener::onHalfClose);
+        }
+
+        @Override
+        public void onCancel() {
+            dispatch(ServerCall.Listener::onCancel);
+        }
+
+        @Override
+        public void onComplete() {
+            dispatch(ServerCall.Listener::onComplete);
+        }
+
+        @Override
+        public void onReady() {
+            dispatch(ServerCall.Listener::onReady);
+        }
+    }
+}
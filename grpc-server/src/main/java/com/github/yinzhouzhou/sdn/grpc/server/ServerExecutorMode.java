@@ -0,0 +1,22 @@
+package com.github.yinzhouzhou.sdn.grpc.server;
+
+/**
+ * 服务端处理调用的线程模式.
+ */
+public enum ServerExecutorMode {
+
+    /**
+     * gRPC默认的无界缓存线程池.
+     */
+    DEFAULT,
+
+    /**
+     * 有界线程池，大小和队列长度可配置，队列满时新的调用返回 RESOURCE_EXHAUSTED.
+     */
+    BOUNDED,
+
+    /**
+     * 直接在网络I/O线程上处理调用，仅适用于不阻塞的 GrpcMessageHandler.
+     */
+    DIRECT
+}
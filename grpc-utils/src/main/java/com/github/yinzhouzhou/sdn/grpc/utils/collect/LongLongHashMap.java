@@ -0,0 +1,214 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+
+/**
+ * Map from {@code long} to {@code long} with open addressing, for large maps
+ * of hashes where boxed keys and entries would dominate the memory.
+ *
+ * <p>Keys and values sit in one array, linearly probed, and removals shift
+ * the following entries back instead of leaving tombstones. The key 0 is
+ * stored aside, so every key is allowed. Not thread safe.
+ */
+public final class LongLongHashMap {
+
+    private static final int MAX_CAPACITY = 1 << 29;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final long missingValue;
+    // Key at 2 * slot, value at 2 * slot + 1; a 0 key is a free slot.
+    private long[] table;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    private boolean hasZeroKey;
+    private long zeroKeyValue;
+
+    /**
+     * Creates a map.
+     *
+     * @param expectedSize number of entries the map holds without growing
+     * @param missingValue value returned for missing keys
+     */
+    public LongLongHashMap(int expectedSize, long missingValue) {
+        checkArgument(expectedSize >= 0, "expectedSize must not be negative");
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key key
+     * @return value, or the missing value if the key is absent
+     */
+    public long get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroKeyValue : missingValue;
+        }
+        final long[] entries = table;
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            final long current = entries[2 * slot];
+            if (current == key) {
+                return entries[2 * slot + 1];
+            }
+            if (current == 0) {
+                return missingValue;
+            }
+        }
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key   key
+     * @param value value
+     * @return previous value, or the missing value if the key was absent
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            final long previous = hasZeroKey ? zeroKeyValue : missingValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroKeyValue = value;
+            return previous;
+        }
+        final long[] entries = table;
+        int slot = slot(key);
+        for (; entries[2 * slot] != 0; slot = (slot + 1) & mask) {
+            if (entries[2 * slot] == key) {
+                final long previous = entries[2 * slot + 1];
+                entries[2 * slot + 1] = value;
+                return previous;
+            }
+        }
+        entries[2 * slot] = key;
+        entries[2 * slot + 1] = value;
+        if (++size > resizeThreshold) {
+            rehash(table.length);
+        }
+        return missingValue;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key key
+     * @return removed value, or the missing value if the key was absent
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return missingValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroKeyValue;
+        }
+        final long[] entries = table;
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            final long current = entries[2 * slot];
+            if (current == 0) {
+                return missingValue;
+            }
+            if (current == key) {
+                final long previous = entries[2 * slot + 1];
+                size--;
+                shiftBack(slot);
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Moves back the entries probed past a freed slot, so that lookups do not
+     * stop early at it.
+     */
+    private void shiftBack(int freed) {
+        final long[] entries = table;
+        int free = freed;
+        for (int slot = (free + 1) & mask; entries[2 * slot] != 0; slot = (slot + 1) & mask) {
+            final int home = slot(entries[2 * slot]);
+            // Move it if its home slot is not between the free slot and its slot, cyclically.
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                entries[2 * free] = entries[2 * slot];
+                entries[2 * free + 1] = entries[2 * slot + 1];
+                free = slot;
+            }
+        }
+        entries[2 * free] = 0;
+        entries[2 * free + 1] = 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        final long[] entries = table;
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            final long current = entries[2 * slot];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the entries, keeping the table.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    private int slot(long key) {
+        // Keys are often hashes already, the mix only spreads sequential ones.
+        final long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    private void rehash(int tableLength) {
+        final long[] old = table;
+        allocate(tableLength);
+        for (int i = 0; i < old.length; i += 2) {
+            final long key = old[i];
+            if (key != 0) {
+                int slot = slot(key);
+                while (table[2 * slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[2 * slot] = key;
+                table[2 * slot + 1] = old[i + 1];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        checkState(capacity <= MAX_CAPACITY, "LongLongHashMap is full");
+        table = new long[2 * capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        final int capacity = (int) Math.ceil(Math.max(expectedSize, 4) / LOAD_FACTOR);
+        return capacity > MAX_CAPACITY ? MAX_CAPACITY : Integer.highestOneBit(capacity - 1) << 1;
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ *
+ * <p>Producers claim a slot with a CAS on the tail sequence and never block: when
+ * the buffer is full {@link #offer(Object)} returns false and the caller decides
+ * what to do with the element (typically count it as dropped). Each slot carries
+ * its own sequence number, so the consumer only sees an element once its
+ * producer has finished publishing it.
+ *
+ * <p>{@link #poll()} and {@link #drain(Consumer, int)} must only be called by one
+ * thread at a time.
+ *
+ * @param <E> element type
+ */
+public final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * Creates a ring buffer holding at least {@code capacity} elements, rounded
+     * up to the next power of two.
+     *
+     * @param capacity minimum capacity
+     */
+    public MpscRingBuffer(int capacity) {
+        checkArgument(capacity > 0 && capacity <= 1 << 30, "Invalid capacity %s", capacity);
+        final int actual = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = actual - 1;
+        this.elements = new AtomicReferenceArray<>(actual);
+        this.sequences = new AtomicLongArray(actual);
+        for (int i = 0; i < actual; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the number of slots of this buffer.
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an element if there is room for it.
+     *
+     * @param element element to add
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        checkNotNull(element);
+        while (true) {
+            final long position = tail.get();
+            final int index = (int) position & mask;
+            final long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The slot still holds the element of the previous lap.
+                return false;
+            }
+            // Another producer claimed the slot, retry with the new tail.
+        }
+    }
+
+    /**
+     * Removes the oldest element, consumer thread only.
+     *
+     * @return the element, or null if the buffer is empty
+     */
+    public E poll() {
+        final long position = head;
+        final int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        final E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Removes up to {@code limit} elements in FIFO order, consumer thread only.
+     *
+     * @param consumer receives each removed element
+     * @param limit    maximum number of elements to remove
+     * @return the number of elements removed
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int count = 0;
+        E element;
+        while (count < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of elements in the buffer. The value is a snapshot and
+     * may be stale as soon as it is returned.
+     *
+     * @return approximate size
+     */
+    public int size() {
+        final long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
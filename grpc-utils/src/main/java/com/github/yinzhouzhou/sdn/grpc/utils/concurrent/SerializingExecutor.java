@@ -0,0 +1,76 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.concurrent;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor running its tasks one at a time, in submission order, on a shared
+ * delegate executor. Used to keep the callbacks of one call ordered while the
+ * callbacks of different calls run in parallel.
+ *
+ * <p>{@link #execute(Runnable)} never fails: if the delegate rejects the task,
+ * e.g. because it is shut down, the queue is drained on the calling thread,
+ * since work already accepted must not be lost.
+ */
+public final class SerializingExecutor implements Executor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerializingExecutor.class);
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = this::drain;
+
+    public SerializingExecutor(Executor delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    /**
+     * Queues a task, running the queue on the calling thread if the delegate
+     * rejects it.
+     *
+     * @param task task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(checkNotNull(task));
+        schedule();
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Exception while executing runnable {}", task, e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // A task may have been queued after the last poll but before the flag
+        // was cleared, by a thread which then saw the flag still set.
+        if (!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                drain();
+            }
+        }
+    }
+}
@@ -0,0 +1,638 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.json;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Proto3 JSON codec of one message type, compiled once from its descriptor.
+ *
+ * <p>The plan of each field (its quoted JSON name, how its value is written
+ * and read, the codec of its message type) is computed up front, so encoding
+ * and decoding only walk arrays of fields instead of looking descriptors up
+ * for every message. Output is written as UTF-8 bytes and input is tokenized
+ * in place, without the JSON tree and the strings built by {@code JsonFormat}.
+ *
+ * <p>The mapping is the one of {@code JsonFormat} with its default settings:
+ * the output is identical to {@code printer().omittingInsignificantWhitespace()}
+ * and anything accepted by {@code parser()} is accepted, except that a field
+ * given twice is merged instead of rejected and that content after the
+ * document is rejected instead of ignored. Well-known types with a special
+ * JSON mapping ({@code Any}, {@code Timestamp}, wrappers...) are handed over to
+ * {@code JsonFormat}.
+ */
+final class CompiledJsonCodec {
+
+    private static final int RECURSION_LIMIT = 100;
+
+    private static final Set<String> WELL_KNOWN_TYPES = ImmutableSet.of(
+        "google.protobuf.Any", "google.protobuf.Timestamp", "google.protobuf.Duration",
+        "google.protobuf.FieldMask", "google.protobuf.Struct", "google.protobuf.Value",
+        "google.protobuf.ListValue", "google.protobuf.DoubleValue", "google.protobuf.FloatValue",
+        "google.protobuf.Int64Value", "google.protobuf.UInt64Value", "google.protobuf.Int32Value",
+        "google.protobuf.UInt32Value", "google.protobuf.BoolValue", "google.protobuf.StringValue",
+        "google.protobuf.BytesValue");
+
+    private static final String VALUE_TYPE = "google.protobuf.Value";
+    private static final String NULL_VALUE_TYPE = "google.protobuf.NullValue";
+    // Value with null_value set, as encoded on the wire.
+    private static final byte[] NULL_VALUE_BYTES = {0x08, 0x00};
+
+    private static final BigInteger MAX_UINT64 = new BigInteger("FFFFFFFFFFFFFFFF", 16);
+    private static final double EPSILON = 1e-6;
+    private static final BigDecimal MAX_DOUBLE =
+        new BigDecimal(String.valueOf(Double.MAX_VALUE)).multiply(new BigDecimal(String.valueOf(1.0 + EPSILON)));
+    private static final BigDecimal MIN_DOUBLE = MAX_DOUBLE.negate();
+
+    private static final ConcurrentMap<Descriptor, CompiledJsonCodec> CODECS = new ConcurrentHashMap<>();
+
+    private static final JsonFormat.Printer WELL_KNOWN_PRINTER = JsonFormat.printer().omittingInsignificantWhitespace();
+    private static final JsonFormat.Parser WELL_KNOWN_PARSER = JsonFormat.parser();
+
+    private final Descriptor descriptor;
+    private final boolean wellKnown;
+    private final FieldPlan[] fields;
+    private final Map<String, FieldPlan> fieldsByName = new HashMap<>();
+
+    private CompiledJsonCodec(Descriptor descriptor) {
+        this.descriptor = descriptor;
+        this.wellKnown = WELL_KNOWN_TYPES.contains(descriptor.getFullName());
+        // JsonFormat prints the fields in field number order.
+        final FieldDescriptor[] byNumber = descriptor.getFields().stream()
+            .sorted(Comparator.comparingInt(FieldDescriptor::getNumber))
+            .toArray(FieldDescriptor[]::new);
+        this.fields = new FieldPlan[byNumber.length];
+        for (int i = 0; i < byNumber.length; i++) {
+            fields[i] = new FieldPlan(byNumber[i], i);
+        }
+        for (FieldPlan field : fields) {
+            fieldsByName.put(field.descriptor.getName(), field);
+            fieldsByName.put(field.descriptor.getJsonName(), field);
+        }
+    }
+
+    /**
+     * Returns the codec of a message type, compiling it on first use.
+     *
+     * @param descriptor message type
+     * @return shared codec
+     */
+    static CompiledJsonCodec forDescriptor(Descriptor descriptor) {
+        final CompiledJsonCodec codec = CODECS.get(descriptor);
+        return codec != null ? codec : CODECS.computeIfAbsent(descriptor, CompiledJsonCodec::new);
+    }
+
+    void write(MessageOrBuilder message, Utf8JsonWriter out) throws IOException {
+        if (wellKnown) {
+            out.writeJson(WELL_KNOWN_PRINTER.print(message));
+            return;
+        }
+        out.writeByte('{');
+        boolean first = true;
+        for (FieldPlan field : fields) {
+            final FieldDescriptor fd = field.descriptor;
+            final Object value;
+            if (field.repeated) {
+                if (message.getRepeatedFieldCount(fd) == 0) {
+                    continue;
+                }
+                value = message.getField(fd);
+            } else if (field.presenceByValue) {
+                value = message.getField(fd);
+                if (value.equals(field.defaultValue)) {
+                    continue;
+                }
+            } else {
+                if (!message.hasField(fd)) {
+                    continue;
+                }
+                value = message.getField(fd);
+            }
+            if (!first) {
+                out.writeByte(',');
+            }
+            first = false;
+            out.writeRaw(field.quotedName);
+            if (field.map) {
+                writeMap(field, (List<?>) value, out);
+            } else if (field.repeated) {
+                out.writeByte('[');
+                final List<?> elements = (List<?>) value;
+                for (int i = 0; i < elements.size(); i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    field.writeValue(elements.get(i), out);
+                }
+                out.writeByte(']');
+            } else {
+                field.writeValue(value, out);
+            }
+        }
+        out.writeByte('}');
+    }
+
+    private static void writeMap(FieldPlan field, List<?> entries, Utf8JsonWriter out) throws IOException {
+        final FieldPlan key = field.mapKey;
+        final FieldPlan value = field.mapValue;
+        out.writeByte('{');
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                out.writeByte(',');
+            }
+            final Message entry = (Message) entries.get(i);
+            final Object entryKey = entry.getField(key.descriptor);
+            // Keys are always quoted; strings and 64-bit integers are already.
+            final boolean quote = key.type != FieldDescriptor.Type.STRING && !key.quoted;
+            if (quote) {
+                out.writeByte('"');
+            }
+            key.writeValue(entryKey, out);
+            if (quote) {
+                out.writeByte('"');
+            }
+            out.writeByte(':');
+            value.writeValue(entry.getField(value.descriptor), out);
+        }
+        out.writeByte('}');
+    }
+
+    /**
+     * Merges the JSON object read next into the builder.
+     *
+     * @param in      reader positioned before the object
+     * @param builder builder of this message type
+     * @param depth   nesting depth of the object
+     * @throws InvalidProtocolBufferException if the JSON does not match the type
+     */
+    void merge(Utf8JsonReader in, Message.Builder builder, int depth) throws InvalidProtocolBufferException {
+        if (depth >= RECURSION_LIMIT) {
+            throw new InvalidProtocolBufferException("Hit recursion limit.");
+        }
+        if (wellKnown) {
+            WELL_KNOWN_PARSER.merge(in.readValueText(), builder);
+            return;
+        }
+        in.expect('{');
+        if (in.consume('}')) {
+            return;
+        }
+        int next = 0;
+        do {
+            in.readKey();
+            final FieldPlan field = findField(in, next);
+            if (field == null) {
+                throw new InvalidProtocolBufferException(
+                    "Cannot find field: " + in.key() + " in message " + descriptor.getFullName());
+            }
+            // Fields usually come in the order they are printed in.
+            next = field.index + 1;
+            in.expect(':');
+            mergeField(field, in, builder, depth);
+        } while (in.consume(','));
+        in.expect('}');
+    }
+
+    private FieldPlan findField(Utf8JsonReader in, int next) {
+        for (int i = 0; i < fields.length; i++) {
+            final FieldPlan field = fields[(next + i) % fields.length];
+            if (in.keyEquals(field.jsonName) || in.keyEquals(field.protoName)) {
+                return field;
+            }
+        }
+        // Escaped key.
+        return fieldsByName.get(in.key());
+    }
+
+    private static void mergeField(FieldPlan field, Utf8JsonReader in, Message.Builder builder, int depth)
+        throws InvalidProtocolBufferException {
+        final FieldDescriptor fd = field.descriptor;
+        if (!field.repeated) {
+            final Object value = field.readValue(in, builder, depth);
+            if (value != null) {
+                builder.setField(fd, value);
+            }
+            return;
+        }
+        if (in.readNull()) {
+            return;
+        }
+        if (field.map) {
+            in.expect('{');
+            if (in.consume('}')) {
+                return;
+            }
+            do {
+                final Message.Builder entry = builder.newBuilderForField(fd);
+                final Object key = field.mapKey.parseScalar(in.readString());
+                in.expect(':');
+                final Object value = field.mapValue.readValue(in, entry, depth);
+                if (value == null) {
+                    throw new InvalidProtocolBufferException("Map value cannot be null.");
+                }
+                entry.setField(field.mapKey.descriptor, key);
+                entry.setField(field.mapValue.descriptor, value);
+                builder.addRepeatedField(fd, entry.build());
+            } while (in.consume(','));
+            in.expect('}');
+            return;
+        }
+        in.expect('[');
+        if (in.consume(']')) {
+            return;
+        }
+        do {
+            final Object value = field.readValue(in, builder, depth);
+            if (value == null) {
+                throw new InvalidProtocolBufferException(
+                    "Repeated field elements cannot be null in field: " + fd.getFullName());
+            }
+            builder.addRepeatedField(fd, value);
+        } while (in.consume(','));
+        in.expect(']');
+    }
+
+    /**
+     * Compiled plan of one field.
+     */
+    private static final class FieldPlan {
+
+        private final FieldDescriptor descriptor;
+        private final FieldDescriptor.Type type;
+        private final int index;
+        private final byte[] quotedName;
+        private final byte[] jsonName;
+        private final byte[] protoName;
+        private final boolean repeated;
+        private final boolean map;
+        // 64-bit integers are quoted in JSON.
+        private final boolean quoted;
+        private final boolean presenceByValue;
+        private final Object defaultValue;
+        private final FieldPlan mapKey;
+        private final FieldPlan mapValue;
+        // Quoted enum names by value index.
+        private final byte[][] enumNames;
+        private final boolean nullValueEnum;
+        private final boolean valueMessage;
+        private volatile CompiledJsonCodec messageCodec;
+
+        FieldPlan(FieldDescriptor descriptor, int index) {
+            this.descriptor = descriptor;
+            this.type = descriptor.getType();
+            this.index = index;
+            this.quotedName = ('"' + descriptor.getJsonName() + "\":").getBytes(StandardCharsets.UTF_8);
+            this.jsonName = descriptor.getJsonName().getBytes(StandardCharsets.UTF_8);
+            this.protoName = descriptor.getName().getBytes(StandardCharsets.UTF_8);
+            this.repeated = descriptor.isRepeated();
+            this.map = descriptor.isMapField();
+            this.quoted = type == FieldDescriptor.Type.INT64 || type == FieldDescriptor.Type.SINT64
+                || type == FieldDescriptor.Type.SFIXED64 || type == FieldDescriptor.Type.UINT64
+                || type == FieldDescriptor.Type.FIXED64;
+            // Proto3 scalars have no presence: they are set when not default,
+            // which is what hasField checks, with one reflective call less.
+            this.presenceByValue = !repeated
+                && descriptor.getFile().getSyntax() == FileDescriptor.Syntax.PROTO3
+                && descriptor.getJavaType() != FieldDescriptor.JavaType.MESSAGE
+                && descriptor.getContainingOneof() == null;
+            this.defaultValue = repeated || descriptor.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+                ? null : descriptor.getDefaultValue();
+            if (map) {
+                this.mapKey = new FieldPlan(descriptor.getMessageType().findFieldByName("key"), 0);
+                this.mapValue = new FieldPlan(descriptor.getMessageType().findFieldByName("value"), 1);
+            } else {
+                this.mapKey = null;
+                this.mapValue = null;
+            }
+            if (type == FieldDescriptor.Type.ENUM) {
+                final EnumDescriptor enumType = descriptor.getEnumType();
+                this.nullValueEnum = NULL_VALUE_TYPE.equals(enumType.getFullName());
+                this.enumNames = enumType.getValues().stream()
+                    .map(value -> ('"' + value.getName() + '"').getBytes(StandardCharsets.UTF_8))
+                    .toArray(byte[][]::new);
+            } else {
+                this.nullValueEnum = false;
+                this.enumNames = null;
+            }
+            this.valueMessage = descriptor.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+                && VALUE_TYPE.equals(descriptor.getMessageType().getFullName());
+        }
+
+        private CompiledJsonCodec messageCodec() {
+            CompiledJsonCodec codec = messageCodec;
+            if (codec == null) {
+                // Resolved lazily: message types may be recursive.
+                codec = forDescriptor(descriptor.getMessageType());
+                messageCodec = codec;
+            }
+            return codec;
+        }
+
+        void writeValue(Object value, Utf8JsonWriter out) throws IOException {
+            switch (type) {
+                case INT32:
+                case SINT32:
+                case SFIXED32:
+                    out.writeLong((Integer) value);
+                    break;
+                case INT64:
+                case SINT64:
+                case SFIXED64:
+                    out.writeByte('"');
+                    out.writeLong((Long) value);
+                    out.writeByte('"');
+                    break;
+                case UINT32:
+                case FIXED32:
+                    out.writeLong((Integer) value & 0xFFFFFFFFL);
+                    break;
+                case UINT64:
+                case FIXED64:
+                    out.writeByte('"');
+                    out.writeUnsignedLong((Long) value);
+                    out.writeByte('"');
+                    break;
+                case BOOL:
+                    out.writeAscii((Boolean) value ? "true" : "false");
+                    break;
+                case FLOAT:
+                    writeFloatingPoint(((Float) value).doubleValue(), value.toString(), out);
+                    break;
+                case DOUBLE:
+                    writeFloatingPoint((Double) value, value.toString(), out);
+                    break;
+                case STRING:
+                    out.writeString((String) value);
+                    break;
+                case BYTES:
+                    out.writeBase64(((ByteString) value).toByteArray());
+                    break;
+                case ENUM:
+                    final EnumValueDescriptor enumValue = (EnumValueDescriptor) value;
+                    if (nullValueEnum) {
+                        out.writeAscii("null");
+                    } else if (enumValue.getIndex() < 0) {
+                        out.writeLong(enumValue.getNumber());
+                    } else {
+                        out.writeRaw(enumNames[enumValue.getIndex()]);
+                    }
+                    break;
+                case MESSAGE:
+                case GROUP:
+                    messageCodec().write((Message) value, out);
+                    break;
+                default:
+                    throw new InvalidProtocolBufferException("Invalid field type: " + type);
+            }
+        }
+
+        private static void writeFloatingPoint(double value, String text, Utf8JsonWriter out) {
+            if (Double.isNaN(value)) {
+                out.writeAscii("\"NaN\"");
+            } else if (Double.isInfinite(value)) {
+                out.writeAscii(value < 0 ? "\"-Infinity\"" : "\"Infinity\"");
+            } else {
+                out.writeAscii(text);
+            }
+        }
+
+        /**
+         * Reads the value of this field, or of one element if it is repeated.
+         *
+         * @return the value, null if the JSON value is null and means absent
+         */
+        Object readValue(Utf8JsonReader in, Message.Builder builder, int depth)
+            throws InvalidProtocolBufferException {
+            if (in.readNull()) {
+                if (valueMessage) {
+                    // null is a value of google.protobuf.Value.
+                    try {
+                        return builder.newBuilderForField(descriptor).mergeFrom(NULL_VALUE_BYTES).build();
+                    } catch (InvalidProtocolBufferException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return nullValueEnum ? descriptor.getEnumType().findValueByNumber(0) : null;
+            }
+            switch (type) {
+                case INT32:
+                case SINT32:
+                case SFIXED32:
+                    if (in.readPlainInteger()) {
+                        return toInt32(in.integer(), in);
+                    }
+                    break;
+                case INT64:
+                case SINT64:
+                case SFIXED64:
+                    if (in.readPlainInteger()) {
+                        return in.integer();
+                    }
+                    break;
+                case UINT32:
+                case FIXED32:
+                    if (in.readPlainInteger()) {
+                        return toUint32(in.integer(), in);
+                    }
+                    break;
+                case MESSAGE:
+                case GROUP:
+                    final Message.Builder subBuilder = builder.newBuilderForField(descriptor);
+                    messageCodec().merge(in, subBuilder, depth + 1);
+                    return subBuilder.build();
+                default:
+                    break;
+            }
+            return parseScalar(in.readScalar());
+        }
+
+        private static Integer toInt32(long value, Utf8JsonReader in) throws InvalidProtocolBufferException {
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw in.error("Not an int32 value: " + value);
+            }
+            return (int) value;
+        }
+
+        private static Integer toUint32(long value, Utf8JsonReader in) throws InvalidProtocolBufferException {
+            if (value < 0 || value > 0xFFFFFFFFL) {
+                throw in.error("Out of range uint32 value: " + value);
+            }
+            return (int) value;
+        }
+
+        /**
+         * Parses the text of a primitive value, quoted or not, the way
+         * {@code JsonFormat} does.
+         */
+        Object parseScalar(String text) throws InvalidProtocolBufferException {
+            switch (type) {
+                case INT32:
+                case SINT32:
+                case SFIXED32:
+                    return parseInt32(text);
+                case INT64:
+                case SINT64:
+                case SFIXED64:
+                    try {
+                        return Long.parseLong(text);
+                    } catch (NumberFormatException e) {
+                        try {
+                            return new BigDecimal(text).longValueExact();
+                        } catch (ArithmeticException | NumberFormatException e2) {
+                            throw new InvalidProtocolBufferException("Not an int64 value: " + text);
+                        }
+                    }
+                case UINT32:
+                case FIXED32:
+                    final BigInteger uint32 = parseUnsigned(text, "uint32");
+                    if (uint32.signum() < 0 || uint32.bitLength() > 32) {
+                        throw new InvalidProtocolBufferException("Out of range uint32 value: " + text);
+                    }
+                    return uint32.intValue();
+                case UINT64:
+                case FIXED64:
+                    final BigInteger uint64 = parseUnsigned(text, "uint64");
+                    if (uint64.signum() < 0 || uint64.compareTo(MAX_UINT64) > 0) {
+                        throw new InvalidProtocolBufferException("Out of range uint64 value: " + text);
+                    }
+                    return uint64.longValue();
+                case BOOL:
+                    if ("true".equals(text)) {
+                        return Boolean.TRUE;
+                    }
+                    if ("false".equals(text)) {
+                        return Boolean.FALSE;
+                    }
+                    throw new InvalidProtocolBufferException("Invalid bool value: " + text);
+                case FLOAT:
+                    return parseFloat(text);
+                case DOUBLE:
+                    return parseDouble(text);
+                case STRING:
+                    return text;
+                case BYTES:
+                    try {
+                        return ByteString.copyFrom(BaseEncoding.base64().decode(text));
+                    } catch (IllegalArgumentException e) {
+                        try {
+                            return ByteString.copyFrom(BaseEncoding.base64Url().decode(text));
+                        } catch (IllegalArgumentException e2) {
+                            throw new InvalidProtocolBufferException("Invalid bytes value: " + text);
+                        }
+                    }
+                case ENUM:
+                    return parseEnum(text);
+                default:
+                    throw new InvalidProtocolBufferException(
+                        "Invalid value: " + text + " for expected type: " + type);
+            }
+        }
+
+        private static int parseInt32(String text) throws InvalidProtocolBufferException {
+            try {
+                return Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                try {
+                    return new BigDecimal(text).intValueExact();
+                } catch (ArithmeticException | NumberFormatException e2) {
+                    throw new InvalidProtocolBufferException("Not an int32 value: " + text);
+                }
+            }
+        }
+
+        private static BigInteger parseUnsigned(String text, String typeName) throws InvalidProtocolBufferException {
+            try {
+                return new BigDecimal(text).toBigIntegerExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new InvalidProtocolBufferException("Not an " + typeName + " value: " + text);
+            }
+        }
+
+        private static float parseFloat(String text) throws InvalidProtocolBufferException {
+            switch (text) {
+                case "NaN":
+                    return Float.NaN;
+                case "Infinity":
+                    return Float.POSITIVE_INFINITY;
+                case "-Infinity":
+                    return Float.NEGATIVE_INFINITY;
+                default:
+                    break;
+            }
+            final double value;
+            try {
+                value = Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new InvalidProtocolBufferException("Not a float value: " + text);
+            }
+            // Printed floats may be slightly out of range after rounding.
+            if (value > Float.MAX_VALUE * (1.0 + EPSILON) || value < -Float.MAX_VALUE * (1.0 + EPSILON)) {
+                throw new InvalidProtocolBufferException("Out of range float value: " + text);
+            }
+            return (float) value;
+        }
+
+        private static double parseDouble(String text) throws InvalidProtocolBufferException {
+            switch (text) {
+                case "NaN":
+                    return Double.NaN;
+                case "Infinity":
+                    return Double.POSITIVE_INFINITY;
+                case "-Infinity":
+                    return Double.NEGATIVE_INFINITY;
+                default:
+                    break;
+            }
+            final BigDecimal value;
+            try {
+                value = new BigDecimal(text);
+            } catch (NumberFormatException e) {
+                throw new InvalidProtocolBufferException("Not a double value: " + text);
+            }
+            if (value.compareTo(MAX_DOUBLE) > 0 || value.compareTo(MIN_DOUBLE) < 0) {
+                throw new InvalidProtocolBufferException("Out of range double value: " + text);
+            }
+            return value.doubleValue();
+        }
+
+        private EnumValueDescriptor parseEnum(String text) throws InvalidProtocolBufferException {
+            final EnumDescriptor enumType = descriptor.getEnumType();
+            EnumValueDescriptor result = enumType.findValueByName(text);
+            if (result == null) {
+                try {
+                    final int number = parseInt32(text);
+                    result = enumType.getFile().getSyntax() == FileDescriptor.Syntax.PROTO3
+                        ? enumType.findValueByNumberCreatingIfUnknown(number)
+                        : enumType.findValueByNumber(number);
+                } catch (InvalidProtocolBufferException e) {
+                    // Neither a name nor a number.
+                }
+            }
+            if (result == null) {
+                throw new InvalidProtocolBufferException(
+                    "Invalid enum value: " + text + " for enum type: " + enumType.getFullName());
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.json;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.Message;
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.MethodDescriptor.PrototypeMarshaller;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-call choice between the protobuf binary encoding and JSON, driven by the
+ * {@code x-content-subtype} request header.
+ *
+ * <p>On the server, {@link #negotiating(ServerServiceDefinition)} wraps a
+ * service definition so that each call is decoded and encoded with the
+ * marshallers selected by the header: {@code proto}, the default when the
+ * header is absent, or {@code json}. Debugging clients can then speak JSON to
+ * the same service that production clients call with the binary encoding.
+ * On the client, {@link #jsonClientInterceptor()} switches the calls of a
+ * channel to JSON and sends the header.
+ *
+ * <p>Only methods whose messages are protobuf messages are negotiated; other
+ * methods are left untouched. JSON is handled by
+ * {@link JsonMarshaller#compiledJsonMarshaller(Message)}.
+ */
+public final class ContentNegotiation {
+
+    /**
+     * Request header naming the encoding of a call, echoed in the response headers.
+     */
+    public static final Metadata.Key<String> CONTENT_SUBTYPE =
+        Metadata.Key.of("x-content-subtype", Metadata.ASCII_STRING_MARSHALLER);
+
+    public static final String PROTO = "proto";
+    public static final String JSON = "json";
+
+    private static final Marshaller<InputStream> STREAM_MARSHALLER = new Marshaller<InputStream>() {
+        @Override
+        public InputStream stream(InputStream value) {
+            return value;
+        }
+
+        @Override
+        public InputStream parse(InputStream stream) {
+            return stream;
+        }
+    };
+
+    /**
+     * Reads the request off the transport buffers while gRPC delivers it: the
+     * listener may decode it later on another thread, e.g. behind an executor
+     * dispatch interceptor, after gRPC has released the buffers.
+     */
+    private static final Marshaller<InputStream> BUFFERING_MARSHALLER = new Marshaller<InputStream>() {
+        @Override
+        public InputStream stream(InputStream value) {
+            return value;
+        }
+
+        @Override
+        public InputStream parse(InputStream stream) {
+            try {
+                return new ByteArrayInputStream(ByteStreams.toByteArray(stream));
+            } catch (IOException e) {
+                throw Status.INTERNAL.withDescription("Unable to read request").withCause(e).asRuntimeException();
+            }
+        }
+    };
+
+    private static final ClientInterceptor JSON_CLIENT_INTERCEPTOR = new JsonClientInterceptor();
+
+    private ContentNegotiation() {
+    }
+
+    /**
+     * Wraps a service definition so that the encoding of each call follows its
+     * {@link #CONTENT_SUBTYPE} header. Calls with an unknown subtype are
+     * rejected with {@code INVALID_ARGUMENT}.
+     *
+     * <p>The negotiated methods exchange raw streams with the server, so server
+     * interceptors see {@link InputStream} messages for them. Requests are
+     * copied to memory when received, so interceptors may hand them to other
+     * threads.
+     *
+     * @param definition service definition using protobuf marshallers
+     * @return negotiating service definition
+     */
+    public static ServerServiceDefinition negotiating(ServerServiceDefinition definition) {
+        final ServiceDescriptor service = definition.getServiceDescriptor();
+        final List<ServerMethodDefinition<?, ?>> methods = new ArrayList<>();
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+            final ServerMethodDefinition<?, ?> negotiated = negotiating(method);
+            methods.add(negotiated != null ? negotiated : method);
+        }
+        final ServiceDescriptor.Builder descriptor = ServiceDescriptor.newBuilder(service.getName())
+            .setSchemaDescriptor(service.getSchemaDescriptor());
+        for (ServerMethodDefinition<?, ?> method : methods) {
+            descriptor.addMethod(method.getMethodDescriptor());
+        }
+        final ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptor.build());
+        for (ServerMethodDefinition<?, ?> method : methods) {
+            builder.addMethod(method);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Client interceptor sending the calls of a channel as JSON.
+     *
+     * @return shared interceptor
+     */
+    public static ClientInterceptor jsonClientInterceptor() {
+        return JSON_CLIENT_INTERCEPTOR;
+    }
+
+    private static <ReqT, RespT> ServerMethodDefinition<InputStream, InputStream> negotiating(
+        ServerMethodDefinition<ReqT, RespT> definition) {
+        final MethodDescriptor<ReqT, RespT> method = definition.getMethodDescriptor();
+        final Marshaller<ReqT> jsonRequest = jsonMarshaller(method.getRequestMarshaller());
+        final Marshaller<RespT> jsonResponse = jsonMarshaller(method.getResponseMarshaller());
+        if (jsonRequest == null || jsonResponse == null) {
+            return null;
+        }
+        final ServerCallHandler<ReqT, RespT> handler = definition.getServerCallHandler();
+        final MethodDescriptor<InputStream, InputStream> streamMethod =
+            method.toBuilder(BUFFERING_MARSHALLER, STREAM_MARSHALLER).build();
+        return ServerMethodDefinition.create(streamMethod, (call, headers) -> {
+            final String subtype = headers.get(CONTENT_SUBTYPE);
+            final Marshaller<ReqT> request;
+            final Marshaller<RespT> response;
+            if (subtype == null || PROTO.equals(subtype)) {
+                request = method.getRequestMarshaller();
+                response = method.getResponseMarshaller();
+            } else if (JSON.equals(subtype)) {
+                request = jsonRequest;
+                response = jsonResponse;
+            } else {
+                call.close(Status.INVALID_ARGUMENT.withDescription("Unsupported content subtype: " + subtype),
+                    new Metadata());
+                return new ServerCall.Listener<InputStream>() {
+                };
+            }
+            final ServerCall.Listener<ReqT> listener =
+                handler.startCall(new NegotiatedServerCall<>(call, method, response, subtype), headers);
+            return new NegotiatedServerCallListener<>(listener, request);
+        });
+    }
+
+    /**
+     * JSON marshaller for the message type of a protobuf marshaller.
+     *
+     * @return marshaller, or null if the messages are not protobuf messages
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Marshaller<T> jsonMarshaller(Marshaller<T> marshaller) {
+        if (marshaller instanceof PrototypeMarshaller) {
+            final Object prototype = ((PrototypeMarshaller<T>) marshaller).getMessagePrototype();
+            if (prototype instanceof Message) {
+                return (Marshaller<T>) JsonMarshaller.compiledJsonMarshaller((Message) prototype);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Server call seen by the service: encodes its responses with the negotiated marshaller.
+     */
+    private static final class NegotiatedServerCall<ReqT, RespT> extends ServerCall<ReqT, RespT> {
+
+        private final ServerCall<InputStream, InputStream> delegate;
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final Marshaller<RespT> marshaller;
+        private final String subtype;
+
+        NegotiatedServerCall(ServerCall<InputStream, InputStream> delegate, MethodDescriptor<ReqT, RespT> method,
+                             Marshaller<RespT> marshaller, String subtype) {
+            this.delegate = delegate;
+            this.method = method;
+            this.marshaller = marshaller;
+            this.subtype = subtype;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            delegate.request(numMessages);
+        }
+
+        @Override
+        public void sendHeaders(Metadata headers) {
+            if (subtype != null) {
+                headers.put(CONTENT_SUBTYPE, subtype);
+            }
+            delegate.sendHeaders(headers);
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            delegate.sendMessage(marshaller.stream(message));
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            delegate.close(status, trailers);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return delegate.isCancelled();
+        }
+
+        @Override
+        public void setMessageCompression(boolean enabled) {
+            delegate.setMessageCompression(enabled);
+        }
+
+        @Override
+        public void setCompression(String compressor) {
+            delegate.setCompression(compressor);
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return delegate.getAttributes();
+        }
+
+        @Override
+        public String getAuthority() {
+            return delegate.getAuthority();
+        }
+
+        @Override
+        public MethodDescriptor<ReqT, RespT> getMethodDescriptor() {
+            return method;
+        }
+    }
+
+    /**
+     * Listener of the raw call: decodes the buffered requests with the
+     * negotiated marshaller.
+     */
+    private static final class NegotiatedServerCallListener<ReqT> extends ServerCall.Listener<InputStream> {
+
+        private final ServerCall.Listener<ReqT> delegate;
+        private final Marshaller<ReqT> marshaller;
+
+        NegotiatedServerCallListener(ServerCall.Listener<ReqT> delegate, Marshaller<ReqT> marshaller) {
+            this.delegate = delegate;
+            this.marshaller = marshaller;
+        }
+
+        @Override
+        public void onMessage(InputStream message) {
+            delegate.onMessage(marshaller.parse(message));
+        }
+
+        @Override
+        public void onHalfClose() {
+            delegate.onHalfClose();
+        }
+
+        @Override
+        public void onCancel() {
+            delegate.onCancel();
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+
+        @Override
+        public void onReady() {
+            delegate.onReady();
+        }
+    }
+
+    /**
+     * Replaces the protobuf marshallers of each call by JSON ones and sends the
+     * {@link #CONTENT_SUBTYPE} header.
+     */
+    private static final class JsonClientInterceptor implements ClientInterceptor {
+
+        // Generated stubs hold one descriptor per method, so this stays small.
+        private final ConcurrentMap<MethodDescriptor<?, ?>, MethodDescriptor<?, ?>> jsonMethods =
+            new ConcurrentHashMap<>();
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                   CallOptions callOptions, Channel next) {
+            final MethodDescriptor<ReqT, RespT> jsonMethod =
+                (MethodDescriptor<ReqT, RespT>) jsonMethods.computeIfAbsent(method, key -> jsonMethod(method));
+            if (jsonMethod == method) {
+                return next.newCall(method, callOptions);
+            }
+            return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(jsonMethod, callOptions)) {
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers) {
+                    headers.put(CONTENT_SUBTYPE, JSON);
+                    super.start(responseListener, headers);
+                }
+            };
+        }
+
+        private static <ReqT, RespT> MethodDescriptor<ReqT, RespT> jsonMethod(MethodDescriptor<ReqT, RespT> method) {
+            final Marshaller<ReqT> request = jsonMarshaller(method.getRequestMarshaller());
+            final Marshaller<RespT> response = jsonMarshaller(method.getResponseMarshaller());
+            if (request == null || response == null) {
+                return method;
+            }
+            return method.toBuilder(request, response).build();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.json;
+
+import io.grpc.KnownLength;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Per-thread buffers reused by the JSON marshallers, and the UTF-8 conversions
+ * between them.
+ *
+ * <p>A buffer is borrowed for the duration of one {@code stream} or
+ * {@code parse} call and never escapes it. Buffers grown beyond
+ * {@link #MAX_RETAINED} by an unusually large message are dropped afterwards,
+ * so one such message does not pin its memory for the life of the thread.
+ */
+final class JsonBuffers {
+
+    static final int MAX_RETAINED = 1024 * 1024;
+
+    private static final int INITIAL_SIZE = 4096;
+
+    private static final ThreadLocal<JsonBuffers> BUFFERS = ThreadLocal.withInitial(JsonBuffers::new);
+
+    private StringBuilder chars = new StringBuilder(INITIAL_SIZE);
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private boolean inUse;
+
+    private JsonBuffers() {
+    }
+
+    /**
+     * Returns the buffers of the current thread, or fresh ones if they are
+     * already borrowed further up the stack.
+     *
+     * @return buffers to {@link #release()} after use
+     */
+    static JsonBuffers acquire() {
+        final JsonBuffers buffers = BUFFERS.get();
+        if (buffers.inUse) {
+            final JsonBuffers nested = new JsonBuffers();
+            nested.inUse = true;
+            return nested;
+        }
+        buffers.inUse = true;
+        return buffers;
+    }
+
+    void release() {
+        if (chars.capacity() > MAX_RETAINED) {
+            chars = new StringBuilder(INITIAL_SIZE);
+        } else {
+            chars.setLength(0);
+        }
+        if (bytes.length > MAX_RETAINED) {
+            bytes = new byte[INITIAL_SIZE];
+        }
+        inUse = false;
+    }
+
+    /**
+     * Returns the empty character buffer to print a message into.
+     *
+     * @return character buffer
+     */
+    StringBuilder chars() {
+        return chars;
+    }
+
+    /**
+     * Encodes the character buffer to UTF-8.
+     *
+     * @return exactly sized UTF-8 bytes
+     */
+    byte[] encodeChars() {
+        final int length = chars.length();
+        // A char takes at most 3 bytes; surrogate pairs take 4 bytes for 2 chars.
+        final byte[] out = ensureBytes(length * 3);
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = chars.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced like String.getBytes does.
+                out[pos++] = '?';
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * Reads the whole stream into the byte buffer. The size of known length
+     * streams, such as those handed out by gRPC, is used to read in one go,
+     * the extra byte making room for the end of stream.
+     *
+     * @param stream stream to read
+     * @return number of bytes read, at the start of {@link #bytes()}
+     * @throws IOException if the stream cannot be read
+     */
+    int readFully(InputStream stream) throws IOException {
+        byte[] buffer = ensureBytes(stream instanceof KnownLength ? stream.available() + 1 : 0);
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                buffer = ensureBytes(buffer.length * 2);
+            }
+            final int read = stream.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                return length;
+            }
+            length += read;
+        }
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Grows the byte buffer, keeping its content, to hold at least
+     * {@code size} bytes.
+     *
+     * @param size required size
+     * @return the byte buffer
+     */
+    byte[] ensureBytes(int size) {
+        if (bytes.length < size) {
+            bytes = Arrays.copyOf(bytes, Math.max(size, bytes.length * 2));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.json;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stream over an encoded JSON message. gRPC sizes the frame with
+ * {@link KnownLength} and copies the message into its transport buffers with
+ * a single {@link Drainable#drainTo(OutputStream)}, without reading it byte by
+ * byte.
+ */
+final class JsonInputStream extends InputStream implements KnownLength, Drainable {
+
+    private final byte[] bytes;
+    private int position;
+
+    JsonInputStream(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+        final int length = bytes.length - position;
+        target.write(bytes, position, length);
+        position = bytes.length;
+        return length;
+    }
+
+    @Override
+    public int read() {
+        return position < bytes.length ? bytes[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) {
+        if (position >= bytes.length) {
+            return len == 0 ? 0 : -1;
+        }
+        final int count = Math.min(len, bytes.length - position);
+        System.arraycopy(bytes, position, buffer, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        final int count = (int) Math.max(0, Math.min(n, bytes.length - position));
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return bytes.length - position;
+    }
+}
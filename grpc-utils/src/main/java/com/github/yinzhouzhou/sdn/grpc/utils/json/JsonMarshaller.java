@@ -8,12 +8,8 @@ import com.google.protobuf.util.JsonFormat.Parser;
 import com.google.protobuf.util.JsonFormat.Printer;
 import io.grpc.MethodDescriptor.Marshaller;
 import io.grpc.Status;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.Charset;
 
 /**
  * A {@link Marshaller} for JSON.  This marshals in the Protobuf 3 format described here:
@@ -26,8 +22,6 @@ public final class JsonMarshaller {
 
     /**
      * Create a {@code Marshaller} for json protos of the same type as {@code defaultInstance}.
-     *
-     * <p>This is an unstable API and has not been optimized yet for performance.
      */
     public static <T extends Message> Marshaller<T> jsonMarshaller(final T defaultInstance) {
         final Parser parser = JsonFormat.parser();
@@ -38,23 +32,28 @@ public final class JsonMarshaller {
     /**
      * Create a {@code Marshaller} for json protos of the same type as {@code defaultInstance}.
      *
-     * <p>This is an unstable API and has not been optimized yet for performance.
+     * <p>Messages are printed into a per-thread buffer and encoded to UTF-8 once;
+     * the resulting stream has a known length and drains to the transport in one
+     * write. Incoming messages are read into a per-thread buffer and decoded as
+     * the parser consumes them.
      */
     public static <T extends Message> Marshaller<T> jsonMarshaller(
         final T defaultInstance, final Parser parser, final Printer printer) {
 
-        final Charset charset = Charset.forName("UTF-8");
-
         return new Marshaller<T>() {
             @Override
             public InputStream stream(T value) {
+                final JsonBuffers buffers = JsonBuffers.acquire();
                 try {
-                    return new ByteArrayInputStream(printer.print(value).getBytes(charset));
-                } catch (InvalidProtocolBufferException e) {
+                    printer.appendTo(value, buffers.chars());
+                    return new JsonInputStream(buffers.encodeChars());
+                } catch (IOException e) {
                     throw Status.INTERNAL
                         .withCause(e)
                         .withDescription("Unable to print json proto")
                         .asRuntimeException();
+                } finally {
+                    buffers.release();
                 }
             }
 
@@ -62,12 +61,11 @@ public final class JsonMarshaller {
             @Override
             public T parse(InputStream stream) {
                 Builder builder = defaultInstance.newBuilderForType();
-                Reader reader = new InputStreamReader(stream, charset);
-                T proto;
+                final JsonBuffers buffers = JsonBuffers.acquire();
                 try {
-                    parser.merge(reader, builder);
-                    proto = (T) builder.build();
-                    reader.close();
+                    final int length = buffers.readFully(stream);
+                    parser.merge(new Utf8Reader(buffers.bytes(), 0, length), builder);
+                    return (T) builder.build();
                 } catch (InvalidProtocolBufferException e) {
                     throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence")
                         .withCause(e).asRuntimeException();
@@ -75,8 +73,63 @@ public final class JsonMarshaller {
                     // Same for now, might be unavailable
                     throw Status.INTERNAL.withDescription("IOException: Invalid protobuf byte sequence")
                         .withCause(e).asRuntimeException();
+                } finally {
+                    buffers.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Create a {@code Marshaller} for json protos of the same type as {@code defaultInstance},
+     * using a codec compiled from its descriptor instead of {@link JsonFormat}.
+     *
+     * <p>Compiled codecs are cached per message type and run several times faster
+     * than {@link JsonFormat}. The JSON is the same as printed by
+     * {@code JsonFormat.printer().omittingInsignificantWhitespace()} and read by
+     * {@code JsonFormat.parser()}, both with their default settings.
+     */
+    public static <T extends Message> Marshaller<T> compiledJsonMarshaller(final T defaultInstance) {
+        final CompiledJsonCodec codec = CompiledJsonCodec.forDescriptor(defaultInstance.getDescriptorForType());
+
+        return new Marshaller<T>() {
+            @Override
+            public InputStream stream(T value) {
+                final JsonBuffers buffers = JsonBuffers.acquire();
+                try {
+                    final Utf8JsonWriter writer = new Utf8JsonWriter(buffers);
+                    codec.write(value, writer);
+                    return new JsonInputStream(writer.toByteArray());
+                } catch (IOException e) {
+                    throw Status.INTERNAL
+                        .withCause(e)
+                        .withDescription("Unable to print json proto")
+                        .asRuntimeException();
+                } finally {
+                    buffers.release();
+                }
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public T parse(InputStream stream) {
+                Builder builder = defaultInstance.newBuilderForType();
+                final JsonBuffers buffers = JsonBuffers.acquire();
+                try {
+                    final int length = buffers.readFully(stream);
+                    final Utf8JsonReader reader = new Utf8JsonReader(buffers.bytes(), 0, length, buffers.chars());
+                    codec.merge(reader, builder, 0);
+                    reader.expectEnd();
+                    return (T) builder.build();
+                } catch (InvalidProtocolBufferException e) {
+                    throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence")
+                        .withCause(e).asRuntimeException();
+                } catch (IOException e) {
+                    throw Status.INTERNAL.withDescription("IOException: Invalid protobuf byte sequence")
+                        .withCause(e).asRuntimeException();
+                } finally {
+                    buffers.release();
                 }
-                return proto;
             }
         };
     }
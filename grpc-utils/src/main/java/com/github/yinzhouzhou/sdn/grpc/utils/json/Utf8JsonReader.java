@@ -0,0 +1,335 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.json;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull tokenizer over a UTF-8 JSON document held in a byte array.
+ *
+ * <p>Tokens are consumed in place: object keys are matched against the field
+ * names of the compiled codec without creating strings, plain integers are
+ * parsed from the bytes, and ASCII strings without escapes are copied once.
+ */
+final class Utf8JsonReader {
+
+    private final byte[] bytes;
+    private final int limit;
+    private final StringBuilder chars;
+    private int pos;
+
+    private int keyStart;
+    private int keyEnd;
+    private String escapedKey;
+    private long integer;
+
+    Utf8JsonReader(byte[] bytes, int offset, int length, StringBuilder chars) {
+        this.bytes = bytes;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.chars = chars;
+    }
+
+    private int skipWhitespace() {
+        while (pos < limit) {
+            final byte b = bytes[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b & 0xFF;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Consumes the given structural character if it comes next.
+     *
+     * @param c structural character
+     * @return true if consumed
+     */
+    boolean consume(char c) {
+        if (skipWhitespace() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    void expect(char c) throws InvalidProtocolBufferException {
+        if (!consume(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    /**
+     * Checks that only whitespace is left after the top-level value.
+     *
+     * @throws InvalidProtocolBufferException if there is more content
+     */
+    void expectEnd() throws InvalidProtocolBufferException {
+        if (skipWhitespace() != -1) {
+            throw error("Did not consume the entire document");
+        }
+    }
+
+    /**
+     * Reads an object key. Without escapes, the key is left in place for
+     * {@link #keyEquals(byte[])}; otherwise it is decoded and returned by
+     * {@link #key()}.
+     *
+     * @throws InvalidProtocolBufferException if the next token is not a string
+     */
+    void readKey() throws InvalidProtocolBufferException {
+        if (skipWhitespace() != '"') {
+            throw error("Expected object key");
+        }
+        final int start = pos + 1;
+        int end = start;
+        while (end < limit && bytes[end] != '"' && bytes[end] != '\\') {
+            end++;
+        }
+        if (end < limit && bytes[end] == '"') {
+            keyStart = start;
+            keyEnd = end;
+            escapedKey = null;
+            pos = end + 1;
+        } else {
+            escapedKey = readString();
+        }
+    }
+
+    boolean keyEquals(byte[] name) {
+        if (escapedKey != null || keyEnd - keyStart != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (bytes[keyStart + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String key() {
+        return escapedKey != null ? escapedKey : new String(bytes, keyStart, keyEnd - keyStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Consumes a {@code null} literal if it comes next.
+     *
+     * @return true if consumed
+     */
+    boolean readNull() {
+        if (skipWhitespace() == 'n' && pos + 4 <= limit
+            && bytes[pos + 1] == 'u' && bytes[pos + 2] == 'l' && bytes[pos + 3] == 'l') {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes an unquoted integer of at most 18 digits if it comes next, the
+     * common case of numeric fields. Other numbers are left for
+     * {@link #readScalar()}.
+     *
+     * @return true if consumed, the value being returned by {@link #integer()}
+     */
+    boolean readPlainInteger() {
+        final boolean negative = skipWhitespace() == '-';
+        int i = pos;
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        final int start = i;
+        while (i < limit && i - start < 18) {
+            final int b = bytes[i];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            i++;
+        }
+        if (i == start || i < limit && !isDelimiter(bytes[i])) {
+            return false;
+        }
+        integer = negative ? -value : value;
+        pos = i;
+        return true;
+    }
+
+    long integer() {
+        return integer;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Reads a primitive value as text: the content of a string, or the literal
+     * text of a number, {@code true} or {@code false}, like
+     * {@code JsonElement.getAsString()}.
+     *
+     * @return value text
+     * @throws InvalidProtocolBufferException if the next value is not a primitive
+     */
+    String readScalar() throws InvalidProtocolBufferException {
+        final int c = skipWhitespace();
+        if (c == '"') {
+            return readString();
+        }
+        if (c == '{' || c == '[' || c == -1) {
+            throw error("Expected a primitive value");
+        }
+        final int start = pos;
+        while (pos < limit && !isDelimiter(bytes[pos]) && bytes[pos] != ':') {
+            pos++;
+        }
+        return new String(bytes, start, pos - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads a string value.
+     *
+     * @return decoded string
+     * @throws InvalidProtocolBufferException if the next value is not a string
+     */
+    String readString() throws InvalidProtocolBufferException {
+        if (skipWhitespace() != '"') {
+            throw error("Expected a string");
+        }
+        final int start = ++pos;
+        boolean ascii = true;
+        int i = start;
+        while (i < limit) {
+            final byte b = bytes[i];
+            if (b == '"') {
+                pos = i + 1;
+                return new String(bytes, start, i - start,
+                                  ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+            }
+            if (b == '\\') {
+                return readEscapedString(start);
+            }
+            ascii &= b >= 0;
+            i++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String readEscapedString(int start) throws InvalidProtocolBufferException {
+        chars.setLength(0);
+        int i = start;
+        while (i < limit) {
+            final byte b = bytes[i];
+            if (b == '"') {
+                pos = i + 1;
+                return chars.toString();
+            }
+            if (b == '\\') {
+                if (i + 1 >= limit) {
+                    break;
+                }
+                final byte escape = bytes[i + 1];
+                i += 2;
+                switch (escape) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        chars.append((char) escape);
+                        break;
+                    case 'b':
+                        chars.append('\b');
+                        break;
+                    case 'f':
+                        chars.append('\f');
+                        break;
+                    case 'n':
+                        chars.append('\n');
+                        break;
+                    case 'r':
+                        chars.append('\r');
+                        break;
+                    case 't':
+                        chars.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 > limit) {
+                            pos = i;
+                            throw error("Truncated unicode escape");
+                        }
+                        try {
+                            chars.append((char) Integer.parseInt(
+                                new String(bytes, i, 4, StandardCharsets.ISO_8859_1), 16));
+                        } catch (NumberFormatException e) {
+                            pos = i;
+                            throw error("Invalid unicode escape");
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        pos = i;
+                        throw error("Invalid escape sequence");
+                }
+            } else if (b >= 0) {
+                chars.append((char) b);
+                i++;
+            } else {
+                // Run of multi-byte characters, decoded by the JDK.
+                final int runStart = i;
+                while (i < limit && bytes[i] < 0) {
+                    i++;
+                }
+                chars.append(new String(bytes, runStart, i - runStart, StandardCharsets.UTF_8));
+            }
+        }
+        pos = limit;
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Skips a whole value and returns its text, for the parts of a document
+     * handed over to {@code JsonFormat}.
+     *
+     * @return JSON text of the value
+     * @throws InvalidProtocolBufferException if the value is malformed
+     */
+    String readValueText() throws InvalidProtocolBufferException {
+        skipWhitespace();
+        final int start = pos;
+        skipValue();
+        return new String(bytes, start, pos - start, StandardCharsets.UTF_8);
+    }
+
+    private void skipValue() throws InvalidProtocolBufferException {
+        final int c = skipWhitespace();
+        if (c == '{') {
+            pos++;
+            if (consume('}')) {
+                return;
+            }
+            do {
+                readString();
+                expect(':');
+                skipValue();
+            } while (consume(','));
+            expect('}');
+        } else if (c == '[') {
+            pos++;
+            if (consume(']')) {
+                return;
+            }
+            do {
+                skipValue();
+            } while (consume(','));
+            expect(']');
+        } else {
+            readScalar();
+        }
+    }
+
+    InvalidProtocolBufferException error(String message) {
+        return new InvalidProtocolBufferException(message + " at offset " + pos);
+    }
+}
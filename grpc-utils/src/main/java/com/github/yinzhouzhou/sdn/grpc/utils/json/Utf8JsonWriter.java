@@ -0,0 +1,201 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.json;
+
+import java.util.Arrays;
+
+/**
+ * Writes JSON tokens as UTF-8 straight into the byte buffer of a
+ * {@link JsonBuffers}, growing it as needed.
+ *
+ * <p>Strings are escaped the way the Gson instance of {@code JsonFormat} does,
+ * HTML-sensitive characters included, so the compiled codec prints the same
+ * bytes as {@code JsonFormat.printer().omittingInsignificantWhitespace()}.
+ */
+final class Utf8JsonWriter {
+
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final byte[] BASE64 =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+    private static final byte[][] ESCAPES = new byte[128][];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = unicodeEscape(c);
+        }
+        ESCAPES['\t'] = new byte[] {'\\', 't'};
+        ESCAPES['\b'] = new byte[] {'\\', 'b'};
+        ESCAPES['\n'] = new byte[] {'\\', 'n'};
+        ESCAPES['\r'] = new byte[] {'\\', 'r'};
+        ESCAPES['\f'] = new byte[] {'\\', 'f'};
+        ESCAPES['"'] = new byte[] {'\\', '"'};
+        ESCAPES['\\'] = new byte[] {'\\', '\\'};
+        for (char c : new char[] {'<', '>', '&', '=', '\''}) {
+            ESCAPES[c] = unicodeEscape(c);
+        }
+    }
+
+    private final JsonBuffers buffers;
+    private byte[] buf;
+    private int pos;
+
+    Utf8JsonWriter(JsonBuffers buffers) {
+        this.buffers = buffers;
+        this.buf = buffers.bytes();
+    }
+
+    private static byte[] unicodeEscape(int c) {
+        return new byte[] {'\\', 'u', '0', '0', HEX[(c >> 4) & 0xF], HEX[c & 0xF]};
+    }
+
+    private void ensure(int count) {
+        if (pos + count > buf.length) {
+            buf = buffers.ensureBytes(pos + count);
+        }
+    }
+
+    void writeByte(char c) {
+        ensure(1);
+        buf[pos++] = (byte) c;
+    }
+
+    void writeRaw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Writes a string made of ASCII characters only, such as a number.
+     *
+     * @param ascii ASCII text
+     */
+    void writeAscii(String ascii) {
+        final int length = ascii.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buf[pos++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeRaw(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+    }
+
+    void writeUnsignedLong(long value) {
+        if (value >= 0) {
+            writeLong(value);
+        } else {
+            writeAscii(Long.toUnsignedString(value));
+        }
+    }
+
+    /**
+     * Writes a quoted, escaped JSON string.
+     *
+     * @param value string value
+     */
+    void writeString(String value) {
+        writeByte('"');
+        writeChars(value, true);
+        writeByte('"');
+    }
+
+    /**
+     * Writes JSON text produced elsewhere, encoded to UTF-8 as is.
+     *
+     * @param json JSON text
+     */
+    void writeJson(String json) {
+        writeChars(json, false);
+    }
+
+    private void writeChars(String value, boolean escape) {
+        final int length = value.length();
+        // Worst case: every char takes a 6 bytes escape.
+        ensure(length * 6);
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                final byte[] escaped = escape ? ESCAPES[c] : null;
+                if (escaped == null) {
+                    buf[pos++] = (byte) c;
+                } else {
+                    System.arraycopy(escaped, 0, buf, pos, escaped.length);
+                    pos += escaped.length;
+                }
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (escape && (c == '\u2028' || c == '\u2029')) {
+                buf[pos++] = '\\';
+                buf[pos++] = 'u';
+                buf[pos++] = '2';
+                buf[pos++] = '0';
+                buf[pos++] = '2';
+                buf[pos++] = c == '\u2028' ? (byte) '8' : (byte) '9';
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes bytes as a quoted, padded base64 string.
+     *
+     * @param bytes binary value
+     */
+    void writeBase64(byte[] bytes) {
+        ensure(2 + (bytes.length + 2) / 3 * 4);
+        buf[pos++] = '"';
+        int i = 0;
+        for (; i + 2 < bytes.length; i += 3) {
+            final int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            buf[pos++] = BASE64[bits >>> 18];
+            buf[pos++] = BASE64[(bits >>> 12) & 0x3F];
+            buf[pos++] = BASE64[(bits >>> 6) & 0x3F];
+            buf[pos++] = BASE64[bits & 0x3F];
+        }
+        final int rest = bytes.length - i;
+        if (rest > 0) {
+            final int bits = (bytes[i] & 0xFF) << 16 | (rest == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+            buf[pos++] = BASE64[bits >>> 18];
+            buf[pos++] = BASE64[(bits >>> 12) & 0x3F];
+            buf[pos++] = rest == 2 ? BASE64[(bits >>> 6) & 0x3F] : (byte) '=';
+            buf[pos++] = '=';
+        }
+        buf[pos++] = '"';
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.json;
+
+import java.io.Reader;
+
+/**
+ * Reader decoding UTF-8 from a byte array on demand, as the JSON parser pulls
+ * characters, without the intermediate buffers of an
+ * {@link java.io.InputStreamReader} or a full {@link String} of the message.
+ * Malformed input is replaced by U+FFFD, as the JDK decoders do.
+ */
+final class Utf8Reader extends Reader {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final byte[] bytes;
+    private final int limit;
+    private int position;
+    // Low surrogate left over when a supplementary character did not fit.
+    private char pending;
+
+    Utf8Reader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public int read(char[] buffer, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        if (pending != 0) {
+            buffer[off + count++] = pending;
+            pending = 0;
+        }
+        while (count < len && position < limit) {
+            final int b = bytes[position];
+            if (b >= 0) {
+                // ASCII fast path, most of a JSON document.
+                buffer[off + count++] = (char) b;
+                position++;
+                continue;
+            }
+            final int codePoint = decodeMultiByte();
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                buffer[off + count++] = (char) codePoint;
+            } else {
+                buffer[off + count++] = Character.highSurrogate(codePoint);
+                if (count < len) {
+                    buffer[off + count++] = Character.lowSurrogate(codePoint);
+                } else {
+                    pending = Character.lowSurrogate(codePoint);
+                }
+            }
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    private int decodeMultiByte() {
+        final int b0 = bytes[position] & 0xFF;
+        final int length;
+        int codePoint;
+        if (b0 >= 0xC2 && b0 <= 0xDF) {
+            length = 2;
+            codePoint = b0 & 0x1F;
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            length = 3;
+            codePoint = b0 & 0x0F;
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            length = 4;
+            codePoint = b0 & 0x07;
+        } else {
+            position++;
+            return REPLACEMENT;
+        }
+        if (position + length > limit) {
+            position = limit;
+            return REPLACEMENT;
+        }
+        for (int i = 1; i < length; i++) {
+            final int b = bytes[position + i] & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                position += i;
+                return REPLACEMENT;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        position += length;
+        // Overlong encodings, surrogates and code points above U+10FFFF.
+        if (length == 3 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint))
+            || length == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT)) {
+            return REPLACEMENT;
+        }
+        return codePoint;
+    }
+
+    @Override
+    public void close() {
+        position = limit;
+        pending = 0;
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.pool;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of byte arrays holding received messages.
+ *
+ * <p>Buffers are handed out regardless of their size; a buffer too small for
+ * the request is dropped and replaced by a larger one, so the pooled buffers
+ * converge to the size of the largest messages. Buffers above the retained
+ * size limit, or returned while the pool is full, are left to the garbage
+ * collector.
+ */
+public final class BufferPool {
+
+    private static final int MIN_BUFFER_SIZE = 4096;
+    private static final BufferPool SHARED = new BufferPool(256, 1024 * 1024);
+
+    private final BlockingQueue<byte[]> buffers;
+    private final int maxRetainedSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxBuffers number of buffers kept in the pool
+     * @param maxRetainedSize size above which returned buffers are dropped
+     */
+    public BufferPool(int maxBuffers, int maxRetainedSize) {
+        checkArgument(maxBuffers > 0, "maxBuffers must be positive");
+        checkArgument(maxRetainedSize > 0, "maxRetainedSize must be positive");
+        this.buffers = new ArrayBlockingQueue<>(maxBuffers);
+        this.maxRetainedSize = maxRetainedSize;
+    }
+
+    /**
+     * Pool shared by the marshallers created without an explicit pool: 256
+     * buffers of up to 1 MB.
+     *
+     * @return shared pool
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a buffer of at least {@code minSize} bytes from the pool, or
+     * allocates one.
+     *
+     * @param minSize minimum size
+     * @return buffer, to be given back with {@link #release(byte[])}
+     */
+    public byte[] acquire(int minSize) {
+        final byte[] buffer = buffers.poll();
+        if (buffer != null && buffer.length >= minSize) {
+            hits.increment();
+            return buffer;
+        }
+        misses.increment();
+        return new byte[Math.max(minSize, MIN_BUFFER_SIZE)];
+    }
+
+    /**
+     * Gives a buffer back to the pool. The caller must not use it anymore.
+     *
+     * @param buffer buffer from {@link #acquire(int)}
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length <= maxRetainedSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Number of buffers currently pooled.
+     *
+     * @return pooled buffers
+     */
+    public int size() {
+        return buffers.size();
+    }
+
+    /**
+     * Number of acquisitions served from the pool.
+     *
+     * @return pool hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of acquisitions that allocated a buffer.
+     *
+     * @return pool misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.pool;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Received message backed by a pooled buffer.
+ *
+ * <p>The {@code bytes} fields of the message, and the string fields of proto2
+ * messages until first read, share the buffer instead of holding a copy, so
+ * the message is only valid until the lease is closed, which gives the buffer
+ * back to its pool. A consumer keeping the message, or a part of it, beyond
+ * that point has to copy it first. A lease is meant to be used by one thread
+ * at a time.
+ *
+ * @param <T> message type
+ */
+public final class MessageLease<T> implements AutoCloseable {
+
+    private final T message;
+    private final BufferPool pool;
+    private byte[] buffer;
+    private boolean closed;
+
+    MessageLease(T message, BufferPool pool, byte[] buffer) {
+        this.message = message;
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Lease of a message not backed by any buffer, for instance one to send.
+     *
+     * @param message message
+     * @param <T> message type
+     * @return lease whose close does nothing
+     */
+    public static <T> MessageLease<T> of(T message) {
+        return new MessageLease<>(checkNotNull(message, "message"), null, null);
+    }
+
+    /**
+     * Leased message.
+     *
+     * @return message
+     * @throws IllegalStateException if the lease is closed
+     */
+    public T get() {
+        checkState(!closed, "Message lease already closed");
+        return message;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Ends the lease and gives the buffer back to its pool. Closing twice has
+     * no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Adapts an observer of messages to the leases received from a pooled
+     * marshaller: each message is handed to {@code observer} and its lease is
+     * closed as soon as {@code onNext} returns.
+     *
+     * @param observer observer not keeping the messages after {@code onNext}
+     * @param <T> message type
+     * @return observer of leases
+     */
+    public static <T> StreamObserver<MessageLease<T>> releasingAfterNext(StreamObserver<T> observer) {
+        checkNotNull(observer, "observer");
+        return new StreamObserver<MessageLease<T>>() {
+            @Override
+            public void onNext(MessageLease<T> lease) {
+                try {
+                    observer.onNext(lease.get());
+                } finally {
+                    lease.close();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                observer.onError(throwable);
+            }
+
+            @Override
+            public void onCompleted() {
+                observer.onCompleted();
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.pool;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.MethodDescriptor.PrototypeMarshaller;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link Marshaller}s parsing protobuf messages out of pooled buffers, for
+ * streams receiving messages at a high rate.
+ *
+ * <p>Each message is read into a buffer of a {@link BufferPool} and parsed
+ * with aliasing enabled: its {@code bytes} fields, such as the JSON values of
+ * gNMI notifications, point into the buffer instead of being copied. The
+ * message is handed over in a {@link MessageLease} which returns the buffer to
+ * the pool once closed, typically by
+ * {@link MessageLease#releasingAfterNext(io.grpc.stub.StreamObserver)} right
+ * after {@code onNext}.
+ */
+public final class PooledMarshaller {
+
+    private PooledMarshaller() {
+    }
+
+    /**
+     * Create a {@code Marshaller} of leased protos of the same type as
+     * {@code defaultInstance}, using the shared buffer pool.
+     */
+    public static <T extends Message> Marshaller<MessageLease<T>> leaseMarshaller(final T defaultInstance) {
+        return leaseMarshaller(defaultInstance, BufferPool.shared());
+    }
+
+    /**
+     * Create a {@code Marshaller} of leased protos of the same type as
+     * {@code defaultInstance}.
+     *
+     * <p>Sent leases are serialized like plain messages; the caller keeps
+     * ownership of them and closes them once {@code onNext} has returned.
+     */
+    public static <T extends Message> Marshaller<MessageLease<T>> leaseMarshaller(
+        final T defaultInstance, final BufferPool pool) {
+
+        @SuppressWarnings("unchecked")
+        final Parser<T> parser = (Parser<T>) defaultInstance.getParserForType();
+        final Marshaller<T> protoMarshaller = ProtoUtils.marshaller(defaultInstance);
+
+        return new Marshaller<MessageLease<T>>() {
+            @Override
+            public InputStream stream(MessageLease<T> value) {
+                return protoMarshaller.stream(value.get());
+            }
+
+            @Override
+            public MessageLease<T> parse(InputStream stream) {
+                byte[] buffer = null;
+                try {
+                    int size = 0;
+                    if (stream instanceof KnownLength) {
+                        size = stream.available();
+                        if (size == 0) {
+                            return MessageLease.of(defaultInstance);
+                        }
+                    }
+                    // One spare byte to see the end of the stream without growing the buffer.
+                    buffer = pool.acquire(size + 1);
+                    int length = 0;
+                    while (true) {
+                        if (length == buffer.length) {
+                            final byte[] larger = pool.acquire(buffer.length * 2);
+                            System.arraycopy(buffer, 0, larger, 0, length);
+                            pool.release(buffer);
+                            buffer = larger;
+                        }
+                        final int read = stream.read(buffer, length, buffer.length - length);
+                        if (read < 0) {
+                            break;
+                        }
+                        length += read;
+                    }
+                    // Wrapped as immutable, otherwise the input copies bytes fields despite aliasing.
+                    final CodedInputStream input = UnsafeByteOperations.unsafeWrap(buffer, 0, length).newCodedInput();
+                    input.enableAliasing(true);
+                    // gRPC enforces the message size limit already.
+                    input.setSizeLimit(Integer.MAX_VALUE);
+                    final T message = parser.parseFrom(input, ExtensionRegistry.getEmptyRegistry());
+                    input.checkLastTagWas(0);
+                    final MessageLease<T> lease = new MessageLease<>(message, pool, buffer);
+                    buffer = null;
+                    return lease;
+                } catch (InvalidProtocolBufferException e) {
+                    throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence")
+                        .withCause(e).asRuntimeException();
+                } catch (IOException e) {
+                    throw Status.INTERNAL.withDescription("IOException: Invalid protobuf byte sequence")
+                        .withCause(e).asRuntimeException();
+                } finally {
+                    if (buffer != null) {
+                        pool.release(buffer);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Copy of a client method receiving its responses as leases, for a call
+     * made with {@code ClientCalls} and an observer from
+     * {@link MessageLease#releasingAfterNext(io.grpc.stub.StreamObserver)}.
+     *
+     * @param method method with a protobuf response marshaller
+     * @param <ReqT> request type
+     * @param <RespT> response type
+     * @return method with leased responses
+     */
+    public static <ReqT, RespT extends Message> MethodDescriptor<ReqT, MessageLease<RespT>> leasingResponses(
+        MethodDescriptor<ReqT, RespT> method) {
+        return method.toBuilder(method.getRequestMarshaller(),
+            leaseMarshaller(prototype(method.getResponseMarshaller()))).build();
+    }
+
+    /**
+     * Copy of a server method receiving its requests as leases.
+     *
+     * @param method method with a protobuf request marshaller
+     * @param <ReqT> request type
+     * @param <RespT> response type
+     * @return method with leased requests
+     */
+    public static <ReqT extends Message, RespT> MethodDescriptor<MessageLease<ReqT>, RespT> leasingRequests(
+        MethodDescriptor<ReqT, RespT> method) {
+        return method.toBuilder(leaseMarshaller(prototype(method.getRequestMarshaller())),
+            method.getResponseMarshaller()).build();
+    }
+
+    private static <T> T prototype(Marshaller<T> marshaller) {
+        checkArgument(marshaller instanceof PrototypeMarshaller, "Not a protobuf marshaller: %s", marshaller);
+        return ((PrototypeMarshaller<T>) marshaller).getMessagePrototype();
+    }
+}
@@ -0,0 +1,233 @@
+package com.github.yinzhouzhou.sdn.grpc.utils.transport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.Channel;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.ServerChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Netty event loops, transport and executor shared by gRPC channels and servers.
+ *
+ * <p>Every channel and server configured with the same instance runs its I/O on
+ * the same worker event loop group, so the number of I/O threads of the process
+ * is set in one place. The native epoll transport is used on Linux when
+ * available, NIO otherwise. The application executor, running call callbacks,
+ * is optional: without it gRPC uses its default cached thread pool.
+ *
+ * <p>Channels and servers do not own these resources: {@link #close()} them
+ * once all of their users are shut down.
+ */
+public final class GrpcTransportResources implements AutoCloseable {
+
+    public static final int DEFAULT_WORKER_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final Logger LOG = LoggerFactory.getLogger(GrpcTransportResources.class);
+
+    private static volatile GrpcTransportResources shared;
+
+    private final boolean nativeTransport;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+    private final Class<? extends Channel> channelType;
+    private final Class<? extends ServerChannel> serverChannelType;
+    private final ExecutorService executor;
+
+    private GrpcTransportResources(Builder builder) {
+        this.nativeTransport = builder.nativeTransport && Epoll.isAvailable();
+        if (builder.nativeTransport && !nativeTransport) {
+            LOG.info("Native epoll transport not available, using NIO: {}",
+                     Epoll.unavailabilityCause() == null ? "not Linux" : Epoll.unavailabilityCause().toString());
+        }
+        if (nativeTransport) {
+            bossGroup = new EpollEventLoopGroup(builder.bossThreads,
+                                                new DefaultThreadFactory(builder.threadNamePrefix + "-boss", true));
+            workerGroup = new EpollEventLoopGroup(builder.workerThreads,
+                                                  new DefaultThreadFactory(builder.threadNamePrefix + "-worker", true));
+            channelType = EpollSocketChannel.class;
+            serverChannelType = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(builder.bossThreads,
+                                              new DefaultThreadFactory(builder.threadNamePrefix + "-boss", true));
+            workerGroup = new NioEventLoopGroup(builder.workerThreads,
+                                                new DefaultThreadFactory(builder.threadNamePrefix + "-worker", true));
+            channelType = NioSocketChannel.class;
+            serverChannelType = NioServerSocketChannel.class;
+        }
+        executor = builder.executorThreads == 0 ? null : Executors.newFixedThreadPool(
+            builder.executorThreads, new ThreadFactoryBuilder()
+                .setNameFormat(builder.threadNamePrefix + "-executor-%d")
+                .setDaemon(true)
+                .build());
+        LOG.info("Created gRPC transport with {} transport, {} worker threads",
+                 nativeTransport ? "epoll" : "NIO", builder.workerThreads);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the instance shared by the whole process, created with the
+     * default settings on first use and never closed.
+     *
+     * @return shared transport resources
+     */
+    public static GrpcTransportResources shared() {
+        GrpcTransportResources instance = shared;
+        if (instance == null) {
+            synchronized (GrpcTransportResources.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = builder().build();
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Makes a channel builder use these resources.
+     *
+     * @param channelBuilder channel builder
+     * @return the same channel builder
+     */
+    public NettyChannelBuilder configure(NettyChannelBuilder channelBuilder) {
+        channelBuilder.eventLoopGroup(workerGroup).channelType(channelType);
+        if (executor != null) {
+            channelBuilder.executor(executor);
+        }
+        return channelBuilder;
+    }
+
+    /**
+     * Makes a server builder use these resources.
+     *
+     * @param serverBuilder server builder
+     * @return the same server builder
+     */
+    public NettyServerBuilder configure(NettyServerBuilder serverBuilder) {
+        serverBuilder.bossEventLoopGroup(bossGroup)
+            .workerEventLoopGroup(workerGroup)
+            .channelType(serverChannelType);
+        if (executor != null) {
+            serverBuilder.executor(executor);
+        }
+        return serverBuilder;
+    }
+
+    public boolean isNativeTransport() {
+        return nativeTransport;
+    }
+
+    public EventLoopGroup workerGroup() {
+        return workerGroup;
+    }
+
+    /**
+     * Shuts down the event loops and the executor.
+     */
+    @Override
+    public void close() {
+        if (this == shared) {
+            LOG.warn("The shared gRPC transport resources cannot be closed");
+            return;
+        }
+        bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Builder of {@link GrpcTransportResources}.
+     */
+    public static final class Builder {
+
+        private int bossThreads = 1;
+        private int workerThreads = DEFAULT_WORKER_THREADS;
+        private int executorThreads;
+        private boolean nativeTransport = true;
+        private String threadNamePrefix = "grpc-transport";
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of threads accepting server connections, 1 by default.
+         *
+         * @param bossThreads thread count
+         * @return this builder
+         */
+        public Builder bossThreads(int bossThreads) {
+            checkArgument(bossThreads > 0, "bossThreads must be positive");
+            this.bossThreads = bossThreads;
+            return this;
+        }
+
+        /**
+         * Sets the number of I/O threads, twice the number of cores by default.
+         *
+         * @param workerThreads thread count
+         * @return this builder
+         */
+        public Builder workerThreads(int workerThreads) {
+            checkArgument(workerThreads > 0, "workerThreads must be positive");
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        /**
+         * Sets the size of the fixed application executor; 0, the default,
+         * keeps the gRPC default executor.
+         *
+         * @param executorThreads thread count
+         * @return this builder
+         */
+        public Builder executorThreads(int executorThreads) {
+            checkArgument(executorThreads >= 0, "executorThreads must not be negative");
+            this.executorThreads = executorThreads;
+            return this;
+        }
+
+        /**
+         * Sets whether to use the native epoll transport when available, true
+         * by default.
+         *
+         * @param nativeTransport false to always use NIO
+         * @return this builder
+         */
+        public Builder nativeTransport(boolean nativeTransport) {
+            this.nativeTransport = nativeTransport;
+            return this;
+        }
+
+        public Builder threadNamePrefix(String threadNamePrefix) {
+            this.threadNamePrefix = checkNotNull(threadNamePrefix);
+            return this;
+        }
+
+        public GrpcTransportResources build() {
+            return new GrpcTransportResources(this);
+        }
+    }
+}